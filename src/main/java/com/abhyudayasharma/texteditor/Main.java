@@ -3,6 +3,7 @@ package com.abhyudayasharma.texteditor;
 import com.abhyudayasharma.texteditor.drawing.DrawingPanel;
 import com.abhyudayasharma.texteditor.editor.Editor;
 import com.abhyudayasharma.texteditor.editor.FontSelector;
+import com.abhyudayasharma.texteditor.editor.Workspace;
 
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
@@ -10,12 +11,13 @@ import javax.swing.event.MenuEvent;
 import javax.swing.event.MenuListener;
 import java.awt.*;
 import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
 /**
  * The Main class for the Project. Contains the <code>main()</code> method.
- * Runs an {@link Editor} in a {@link JFrame} with some added UI.
+ * Runs {@link Editor}s in the tabs of a {@link Workspace} in a {@link JFrame} with some added UI.
  */
 class Main {
     /**
@@ -33,14 +35,14 @@ class Main {
             }
 
             final var frame = new JFrame("TextEditor");
-            final var editor = new Editor();
+            final var workspace = new Workspace();
             frame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
             frame.setLayout(new GridBagLayout());
 
             frame.addWindowListener(new WindowAdapter() {
                 @Override
                 public void windowClosing(WindowEvent e) {
-                    if (editor.confirmClose()) {
+                    if (workspace.confirmClose()) {
                         System.exit(0);
                     }
                 }
@@ -51,26 +53,45 @@ class Main {
             var editMenu = new JMenu("Edit");
             var formatMenu = new JMenu("Format");
 
+            var newTabButton = new JMenuItem("New Tab");
+            var closeTabButton = new JMenuItem("Close Tab");
             var saveButton = new JMenuItem("Save");
             var saveAsButton = new JMenuItem("Save As...");
             var openButton = new JMenuItem("Open...");
+            var openLargeButton = new JMenuItem("Open Large File...");
+            var openTextButton = new JMenuItem("View Text File...");
+            var importTextButton = new JMenuItem("Import Text...");
+            var exportTextButton = new JMenuItem("Export Text...");
             var aboutButton = new JMenuItem("About...");
 
+            newTabButton.setAccelerator(KeyStroke.getKeyStroke('T', InputEvent.CTRL_DOWN_MASK));
+            newTabButton.addActionListener(e -> workspace.newTab());
+            closeTabButton.setAccelerator(KeyStroke.getKeyStroke('W', InputEvent.CTRL_DOWN_MASK));
+            closeTabButton.addActionListener(e -> workspace.closeTab());
+
             saveButton.setAccelerator(KeyStroke.getKeyStroke('S', InputEvent.CTRL_DOWN_MASK));
-            saveButton.addActionListener(e -> editor.save());
+            saveButton.addActionListener(e -> workspace.getEditor().save());
 
-            saveAsButton.addActionListener(e -> editor.saveAs());
+            saveAsButton.addActionListener(e -> workspace.getEditor().saveAs());
 
             openButton.setAccelerator(KeyStroke.getKeyStroke('O', InputEvent.CTRL_DOWN_MASK));
-            openButton.addActionListener(e -> editor.open());
+            openButton.addActionListener(e -> workspace.getEditor().open());
+            openLargeButton.addActionListener(e -> workspace.getEditor().openLarge());
+            openTextButton.addActionListener(e -> workspace.getEditor().openText());
+            importTextButton.addActionListener(e -> workspace.getEditor().importText());
+            exportTextButton.addActionListener(e -> workspace.getEditor().exportText());
 
             aboutButton.addActionListener(e -> JOptionPane.showMessageDialog(frame,
                     "A simple text editor made by Abhyudaya Sharma and Ambreesh Parthasarthy."));
 
+            var undoButton = new JMenuItem("Undo");
+            var redoButton = new JMenuItem("Redo");
             var cutButton = new JMenuItem("Cut");
             var copyButton = new JMenuItem("Copy");
             var pasteButton = new JMenuItem("Paste");
             var findButton = new JMenuItem("Find...");
+            var findNextButton = new JMenuItem("Find Next");
+            var findPreviousButton = new JMenuItem("Find Previous");
             var replaceButton = new JMenuItem("Replace...");
 
             var boldButton = new JCheckBoxMenuItem("Bold");
@@ -78,49 +99,101 @@ class Main {
             var underlineButton = new JCheckBoxMenuItem("Underline");
             var upperCaseButton = new JMenuItem("To Upper Case");
             var lowerCaseButton = new JMenuItem("To Lower Case");
+            var titleCaseButton = new JMenuItem("To Title Case");
+            var toggleCaseButton = new JMenuItem("Toggle Case");
+            var normalizeButton = new JMenuItem("Normalize Unicode");
             var fontButton = new JMenuItem("Font...");
+            var statisticsButton = new JMenuItem("Document Statistics...");
+            var attributeUsageButton = new JMenuItem("Attribute Usage...");
 
+            undoButton.setAccelerator(KeyStroke.getKeyStroke('Z', InputEvent.CTRL_DOWN_MASK));
+            redoButton.setAccelerator(KeyStroke.getKeyStroke('Y', InputEvent.CTRL_DOWN_MASK));
             cutButton.setAccelerator(KeyStroke.getKeyStroke('X', InputEvent.CTRL_DOWN_MASK));
             copyButton.setAccelerator(KeyStroke.getKeyStroke('C', InputEvent.CTRL_DOWN_MASK));
             pasteButton.setAccelerator(KeyStroke.getKeyStroke('V', InputEvent.CTRL_DOWN_MASK));
             findButton.setAccelerator(KeyStroke.getKeyStroke('F', InputEvent.CTRL_DOWN_MASK));
+            findNextButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+            findPreviousButton.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, InputEvent.SHIFT_DOWN_MASK));
             replaceButton.setAccelerator(KeyStroke.getKeyStroke('H', InputEvent.CTRL_DOWN_MASK));
 
-            cutButton.addActionListener(e -> editor.cut());
-            copyButton.addActionListener(e -> editor.copy());
-            pasteButton.addActionListener(e -> editor.paste());
-            findButton.addActionListener(e -> editor.findText());
-            replaceButton.addActionListener(e -> editor.replaceText());
-
+            undoButton.addActionListener(e -> workspace.getEditor().undo());
+            redoButton.addActionListener(e -> workspace.getEditor().redo());
+            cutButton.addActionListener(e -> workspace.getEditor().cut());
+            copyButton.addActionListener(e -> workspace.getEditor().copy());
+            pasteButton.addActionListener(e -> workspace.getEditor().paste());
+            findButton.addActionListener(e -> workspace.getEditor().findText());
+            findNextButton.addActionListener(e -> workspace.getEditor().findNext());
+            findPreviousButton.addActionListener(e -> workspace.getEditor().findPrevious());
+            replaceButton.addActionListener(e -> workspace.getEditor().replaceText());
+
+            fileMenu.add(newTabButton);
+            fileMenu.add(closeTabButton);
+            fileMenu.add(new JSeparator());
             fileMenu.add(openButton);
+            fileMenu.add(openLargeButton);
+            fileMenu.add(openTextButton);
             fileMenu.add(new JSeparator());
             fileMenu.add(saveButton);
             fileMenu.add(saveAsButton);
             fileMenu.add(new JSeparator());
+            fileMenu.add(importTextButton);
+            fileMenu.add(exportTextButton);
+            fileMenu.add(new JSeparator());
             fileMenu.add(aboutButton);
 
+            editMenu.add(undoButton);
+            editMenu.add(redoButton);
+            editMenu.add(new JSeparator());
             editMenu.add(cutButton);
             editMenu.add(copyButton);
             editMenu.add(pasteButton);
             editMenu.add(new JSeparator());
             editMenu.add(findButton);
+            editMenu.add(findNextButton);
+            editMenu.add(findPreviousButton);
             editMenu.add(replaceButton);
 
+            editMenu.addMenuListener(new MenuListener() {
+                @Override
+                public void menuSelected(MenuEvent e) {
+                    undoButton.setEnabled(workspace.getEditor().canUndo());
+                    redoButton.setEnabled(workspace.getEditor().canRedo());
+                }
+
+                @Override
+                public void menuDeselected(MenuEvent e) {
+                    // keep the shortcuts working while the menu is closed
+                    undoButton.setEnabled(true);
+                    redoButton.setEnabled(true);
+                }
+
+                @Override
+                public void menuCanceled(MenuEvent e) {
+                }
+            });
+
             formatMenu.add(boldButton);
             formatMenu.add(italicButton);
             formatMenu.add(underlineButton);
             formatMenu.add(new JSeparator());
             formatMenu.add(upperCaseButton);
             formatMenu.add(lowerCaseButton);
+            formatMenu.add(titleCaseButton);
+            formatMenu.add(toggleCaseButton);
+            formatMenu.add(normalizeButton);
             formatMenu.add(new JSeparator());
             formatMenu.add(fontButton);
+            formatMenu.add(new JSeparator());
+            formatMenu.add(statisticsButton);
+            formatMenu.add(attributeUsageButton);
 
             formatMenu.addMenuListener(new MenuListener() {
                 @Override
                 public void menuSelected(MenuEvent e) {
-                    boldButton.setState(editor.isSelectionBold());
-                    italicButton.setState(editor.isSelectionItalic());
-                    underlineButton.setState(editor.isSelectionUnderline());
+                    var format = workspace.getEditor().getSelectionFormat();
+                    boldButton.setState(format.isBold());
+                    italicButton.setState(format.isItalic());
+                    underlineButton.setState(format.isUnderline());
                 }
 
                 @Override
@@ -132,19 +205,24 @@ class Main {
                 }
             });
 
-            boldButton.addActionListener(e -> editor.toggleBoldOnSelection());
-            italicButton.addActionListener(e -> editor.toggleItalicsOnSelection());
-            underlineButton.addActionListener(e -> editor.toggleUnderlineOnSelection());
-            upperCaseButton.addActionListener(e -> editor.selectionToUpperCase());
-            lowerCaseButton.addActionListener(e -> editor.selectionToLowerCase());
+            boldButton.addActionListener(e -> workspace.getEditor().toggleBoldOnSelection());
+            italicButton.addActionListener(e -> workspace.getEditor().toggleItalicsOnSelection());
+            underlineButton.addActionListener(e -> workspace.getEditor().toggleUnderlineOnSelection());
+            upperCaseButton.addActionListener(e -> workspace.getEditor().selectionToUpperCase());
+            lowerCaseButton.addActionListener(e -> workspace.getEditor().selectionToLowerCase());
+            titleCaseButton.addActionListener(e -> workspace.getEditor().selectionToTitleCase());
+            toggleCaseButton.addActionListener(e -> workspace.getEditor().toggleSelectionCase());
+            normalizeButton.addActionListener(e -> workspace.getEditor().normalizeSelection());
             fontButton.addActionListener(e -> {
                 var fontSelector = new FontSelector();
                 var response = JOptionPane.showConfirmDialog(frame, fontSelector, "Font",
                         JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
                 if (response == JOptionPane.OK_OPTION) {
-                    editor.setSelectionFont(fontSelector.getSelectedFont());
+                    workspace.getEditor().setSelectionFont(fontSelector.getSelectedFont());
                 }
             });
+            statisticsButton.addActionListener(e -> workspace.getEditor().showStatistics());
+            attributeUsageButton.addActionListener(e -> workspace.getEditor().showAttributeUsage());
 
             boldButton.setAccelerator(KeyStroke.getKeyStroke('B', InputEvent.CTRL_DOWN_MASK));
             italicButton.setAccelerator(KeyStroke.getKeyStroke('I', InputEvent.CTRL_DOWN_MASK));
@@ -158,6 +236,7 @@ class Main {
             var statusBar = new JPanel(new FlowLayout(FlowLayout.RIGHT));
             var wordCountLabel = new JLabel("0 words");
             var charCountLabel = new JLabel("0 characters");
+            var saveStatusLabel = new JLabel();
             var modeGroup = new ButtonGroup();
             var editorRadio = new JRadioButton("Editor", true);
             var shapesRadio = new JRadioButton("Shapes");
@@ -170,6 +249,8 @@ class Main {
                 editorRadio.setSelected(true);
             });
 
+            statusBar.add(saveStatusLabel);
+            statusBar.add(new JSeparator(SwingConstants.VERTICAL));
             statusBar.add(new JLabel("Mode: "));
             statusBar.add(editorRadio);
             statusBar.add(shapesRadio);
@@ -180,11 +261,11 @@ class Main {
             statusBar.add(new JSeparator(SwingConstants.VERTICAL));
             statusBar.setBorder(BorderFactory.createBevelBorder(BevelBorder.LOWERED, Color.BLACK, Color.GRAY));
 
-            // update the word-count, char-count and saved file name every 200ms
-            new Timer(200, e -> {
+            // the selected tab pushes the word-count and char-count whenever the text or the selection changes
+            workspace.addStatisticsListener(statistics -> {
                 // wordCountLabel
-                var wordCount = editor.wordCount();
-                var selectedWordCount = editor.selectedWordCount();
+                var wordCount = statistics.getWordCount();
+                var selectedWordCount = statistics.getSelectedWordCount();
                 if (selectedWordCount == 0) {
                     wordCountLabel.setText(wordCount + (wordCount == 1 ? " word" : " words"));
                 } else {
@@ -193,23 +274,29 @@ class Main {
                 }
 
                 // charCountLabel
-                var charCount = editor.charCount();
-                var selectedCharCount = editor.selectedCharCount();
+                var charCount = statistics.getCharCount();
+                var selectedCharCount = statistics.getSelectedCharCount();
                 if (selectedCharCount == 0) {
                     charCountLabel.setText(charCount + (charCount == 1 ? " character" : " characters"));
                 } else {
                     charCountLabel.setText(selectedCharCount + " of " + charCount +
                             (charCount == 1 ? " character" : " characters"));
                 }
+            });
 
-                // savedFileLabel
-                var fileName = editor.getSavedFilePath();
+            // savedFileLabel
+            workspace.addPropertyChangeListener("savedFilePath", e -> {
+                var fileName = workspace.getSavedFilePath();
                 if (fileName != null) {
                     frame.setTitle("TextEditor - " + fileName);
                 } else {
                     frame.setTitle("TextEditor");
                 }
-            }).start();
+            });
+
+            // saveStatusLabel
+            workspace.addPropertyChangeListener("saveStatus",
+                    e -> saveStatusLabel.setText(workspace.getSaveStatus()));
 
             var gbc = new GridBagConstraints();
             gbc.gridx = 0;
@@ -220,7 +307,7 @@ class Main {
             gbc.weighty = 1;
             gbc.fill = 1;
             gbc.insets = new Insets(1, 1, 1, 1);
-            frame.add(editor, gbc);
+            frame.add(workspace, gbc);
 
             gbc.gridx = 0;
             gbc.gridy = 1;
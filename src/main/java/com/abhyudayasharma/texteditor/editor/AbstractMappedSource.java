@@ -0,0 +1,133 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A common base for the {@link ChunkSource}s reading a memory-mapped file, which is indexed by a background
+ * thread. It maps the file, keeps the index of the chunks found so far and tells the listeners about them.
+ */
+abstract class AbstractMappedSource implements ChunkSource {
+    /**
+     * The size of each mapped region of the file, a single {@link MappedByteBuffer} cannot exceed 2GB
+     */
+    private static final int REGION_SIZE = 1 << 30;
+
+    /**
+     * The shortest time in milliseconds between two notifications of the listeners while indexing
+     */
+    static final long NOTIFY_INTERVAL = 100;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final ArrayList<Runnable> listeners = new ArrayList<>();
+    final long fileSize;
+    volatile boolean closed;
+
+    // the chunk index, guarded by this: where each chunk starts in the file and in the text
+    long[] chunkBytes = new long[64];
+    long[] chunkChars = new long[64];
+    int chunkStarts;
+
+    AbstractMappedSource(FileChannel channel) throws IOException {
+        this.channel = channel;
+        fileSize = channel.size();
+        regions = new MappedByteBuffer[(int) ((fileSize + REGION_SIZE - 1) / REGION_SIZE)];
+        for (int i = 0; i < regions.length; i++) {
+            var start = (long) i * REGION_SIZE;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, fileSize - start));
+        }
+    }
+
+    @Override
+    public void addChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Records where the next chunk starts
+     *
+     * @param position the position of the chunk in the file
+     * @param chars    the number of characters before the chunk
+     */
+    synchronized void addChunk(long position, long chars) {
+        if (chunkStarts == chunkBytes.length) {
+            chunkBytes = Arrays.copyOf(chunkBytes, chunkStarts * 2);
+            chunkChars = Arrays.copyOf(chunkChars, chunkStarts * 2);
+        }
+        chunkBytes[chunkStarts] = position;
+        chunkChars[chunkStarts++] = chars;
+    }
+
+    /**
+     * Calls the listeners on the Event Dispatch Thread
+     */
+    void notifyListeners() {
+        SwingUtilities.invokeLater(() -> {
+            for (var listener : listeners) {
+                listener.run();
+            }
+        });
+    }
+
+    /**
+     * Returns the mapped region holding a position, whose indices are relative to {@link #regionStart(long)}
+     *
+     * @param position the position in the file
+     * @return the region
+     */
+    ByteBuffer region(long position) {
+        return regions[(int) (position / REGION_SIZE)];
+    }
+
+    /**
+     * Returns where the mapped region holding a position starts
+     *
+     * @param position the position in the file
+     * @return the position of the first byte of the region
+     */
+    static long regionStart(long position) {
+        return position / REGION_SIZE * REGION_SIZE;
+    }
+
+    byte get(long position) {
+        return regions[(int) (position / REGION_SIZE)].get((int) (position % REGION_SIZE));
+    }
+
+    /**
+     * Whether the byte at a position is not in the middle of a UTF-8 sequence
+     */
+    boolean startsCharacter(long position) {
+        return position >= fileSize || (get(position) & 0xC0) != 0x80;
+    }
+
+    /**
+     * Returns a view of a range of the file, copying it only if it spans two regions
+     */
+    ByteBuffer slice(long start, long end) {
+        var length = (int) (end - start);
+        var region = (int) (start / REGION_SIZE);
+        var offset = (int) (start % REGION_SIZE);
+        if (offset + length <= regions[region].limit()) {
+            var view = regions[region].duplicate();
+            view.position(offset).limit(offset + length);
+            return view.slice();
+        }
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = get(start + i);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
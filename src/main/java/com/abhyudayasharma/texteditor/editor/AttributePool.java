@@ -0,0 +1,137 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleContext;
+import javax.swing.text.StyledDocument;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * The {@link StyleContext} shared by all the {@link StylizedDocument}s, so that each distinct combination of
+ * character attributes is stored once, whichever document, clipboard or undoable edit uses it.
+ * <p>
+ * A {@link StyleContext} keeps the immutable attribute sets it creates in a pool of weak references and hands
+ * out the pooled instance for any equal set, but only for sets with a few attributes; larger sets are copied
+ * into a new mutable set every time. The threshold is raised here so that every set used for formatting text
+ * is pooled. Sets which are no longer used anywhere are dropped by the garbage collector.
+ */
+final class AttributePool extends StyleContext {
+    /**
+     * The largest number of attributes in a pooled set
+     */
+    private static final int COMPRESSION_THRESHOLD = 32;
+
+    private static final AttributePool pool = new AttributePool();
+
+    private AttributePool() {
+    }
+
+    /**
+     * Returns the pool shared by all the documents
+     *
+     * @return the shared pool
+     */
+    static AttributePool getPool() {
+        return pool;
+    }
+
+    @Override
+    protected int getCompressionThreshold() {
+        return COMPRESSION_THRESHOLD;
+    }
+
+    /**
+     * Returns the pooled instance equal to a set of attributes
+     *
+     * @param attributes the attributes
+     * @return an immutable set equal to the attributes, shared with every other user of the same attributes
+     */
+    AttributeSet intern(AttributeSet attributes) {
+        return addAttributes(getEmptySet(), attributes);
+    }
+
+    /**
+     * Counts the attribute sets used by the runs of a document
+     *
+     * @param document the document
+     * @return the number of runs, the attribute sets they use and an estimate of the memory taken by the sets
+     */
+    static Usage measure(StyledDocument document) {
+        var usage = new Usage();
+        document.render(() -> {
+            var instances = new IdentityHashMap<AttributeSet, Boolean>();
+            var combinations = new HashSet<AttributeSet>();
+            var root = document.getDefaultRootElement();
+            for (int p = 0; p < root.getElementCount(); p++) {
+                var paragraph = root.getElement(p);
+                for (int r = 0; r < paragraph.getElementCount(); r++) {
+                    // the element is a mutable wrapper, the set it wraps is the shared one
+                    var attributes = paragraph.getElement(r).getAttributes().copyAttributes();
+                    usage.runs++;
+                    if (instances.put(attributes, Boolean.TRUE) == null) {
+                        usage.estimatedBytes += estimateSize(attributes);
+                    }
+                    combinations.add(attributes);
+                }
+            }
+            usage.instances = instances.size();
+            usage.combinations = combinations.size();
+        });
+        return usage;
+    }
+
+    /**
+     * Estimates the memory taken by an attribute set, without its keys and values which are usually shared.
+     * A pooled set is an object holding an array of keys and values, and a weak reference in the pool.
+     * Any other set is assumed to be a hash table.
+     */
+    private static long estimateSize(AttributeSet attributes) {
+        var count = attributes.getAttributeCount();
+        if (attributes instanceof SmallAttributeSet) {
+            return 24 + 16 + 8L * count + 48;
+        }
+        return 16 + 48 + 16 + 8L * count + 32L * count;
+    }
+
+    /**
+     * The attribute sets used by a document
+     */
+    static final class Usage {
+        private int runs;
+        private int instances;
+        private int combinations;
+        private long estimatedBytes;
+
+        private Usage() {
+        }
+
+        /**
+         * @return the number of runs of equally formatted characters
+         */
+        int getRuns() {
+            return runs;
+        }
+
+        /**
+         * @return the number of distinct attribute set objects used by the runs
+         */
+        int getInstances() {
+            return instances;
+        }
+
+        /**
+         * @return the number of distinct combinations of attributes used by the runs,
+         * equal to the number of instances when all the sets are pooled
+         */
+        int getCombinations() {
+            return combinations;
+        }
+
+        /**
+         * @return an estimate of the heap memory taken by the attribute set objects, in bytes
+         */
+        long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A document too large to be loaded at once, split into chunks which are loaded on demand.
+ * Chunks end at line breaks where possible and are numbered from the start of the document.
+ * The chunks are usually found by a background pass over the file, so more chunks can become available
+ * while the source is being used.
+ */
+interface ChunkSource extends Closeable {
+    /**
+     * Opens a document file in the binary format, compressed or not
+     *
+     * @param path the file
+     * @return the source
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    static ChunkSource open(Path path) throws IOException {
+        if (DocumentFormat.isCompressed(path)) {
+            return CompressedDocumentSource.open(path);
+        }
+        return MappedDocumentSource.open(path);
+    }
+
+    /**
+     * Returns the number of chunks which can be loaded so far
+     *
+     * @return the number of chunks found
+     */
+    int getChunkCount();
+
+    /**
+     * Returns whether all the chunks have been found
+     *
+     * @return true if {@link #getChunkCount()} will not grow any more
+     */
+    boolean isComplete();
+
+    /**
+     * Loads a chunk
+     *
+     * @param index the index of the chunk, less than {@link #getChunkCount()}
+     * @return the chunk
+     * @throws IOException if the chunk cannot be read
+     */
+    TextChunk loadChunk(int index) throws IOException;
+
+    /**
+     * Registers a listener which is called on the Event Dispatch Thread whenever more chunks are found
+     *
+     * @param listener the listener
+     */
+    void addChangeListener(Runnable listener);
+}
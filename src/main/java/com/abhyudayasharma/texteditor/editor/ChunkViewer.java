@@ -0,0 +1,378 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import java.awt.*;
+import java.awt.event.AdjustmentListener;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Shows a document from a {@link ChunkSource} in a read-only {@link StylizedTextPane}.
+ * Only a window of a few consecutive chunks is loaded into the text pane. When the viewport comes close to
+ * either end of the window, the window slides by one chunk in that direction and the view is moved so that
+ * the same text stays on the screen. A separate scroll bar shows the position in the whole document and
+ * jumps to any chunk.
+ * <p>
+ * Find searches the whole document, loading and searching one chunk at a time on a background thread.
+ * A match is only found inside a chunk, so it cannot span the line break at which a chunk ends.
+ */
+final class ChunkViewer {
+    /**
+     * The maximum number of chunks loaded in the text pane
+     */
+    private static final int WINDOW_SIZE = 3;
+
+    private final StylizedTextPane textPane;
+    private final JScrollPane scrollPane;
+    private final ChunkSource source;
+    private final JScrollBar positionBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, 1);
+    private final ChangeListener viewportListener = e -> viewportChanged();
+    private final AdjustmentListener positionListener;
+    private final int caretUpdatePolicy;
+
+    // the chunks in the text pane
+    private int first = -1;
+    private int last = -1;
+    private long[] chunkStarts = new long[0];
+    private boolean adjusting;
+    private boolean closed;
+    private boolean finding;
+
+    /**
+     * Starts showing a document in a text pane
+     *
+     * @param textPane   the text pane, which is made read-only
+     * @param scrollPane the scroll pane holding the text pane
+     * @param source     the document
+     */
+    ChunkViewer(StylizedTextPane textPane, JScrollPane scrollPane, ChunkSource source) {
+        this.textPane = textPane;
+        this.scrollPane = scrollPane;
+        this.source = source;
+        textPane.setEditable(false);
+        // the caret is moved by the viewer, it must not scroll the text pane on its own
+        var caret = (DefaultCaret) textPane.getCaret();
+        caretUpdatePolicy = caret.getUpdatePolicy();
+        caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+
+        positionListener = e -> {
+            if (!adjusting && !e.getValueIsAdjusting()) {
+                jumpTo(e.getValue());
+            }
+        };
+        positionBar.addAdjustmentListener(positionListener);
+        scrollPane.getViewport().addChangeListener(viewportListener);
+        source.addChangeListener(this::chunksFound);
+        chunksFound();
+    }
+
+    /**
+     * Returns the scroll bar showing the position in the whole document
+     *
+     * @return the scroll bar, to be shown next to the text pane
+     */
+    JScrollBar getPositionBar() {
+        return positionBar;
+    }
+
+    /**
+     * Stops showing the document and closes the source. The text pane is made editable again,
+     * its document is left to be replaced by the caller.
+     *
+     * @throws IOException if the source cannot be closed
+     */
+    void close() throws IOException {
+        scrollPane.getViewport().removeChangeListener(viewportListener);
+        positionBar.removeAdjustmentListener(positionListener);
+        ((DefaultCaret) textPane.getCaret()).setUpdatePolicy(caretUpdatePolicy);
+        textPane.setEditable(true);
+        closed = true;
+        source.close();
+    }
+
+    private void chunksFound() {
+        if (closed) {
+            return;
+        }
+        var count = source.getChunkCount();
+        adjusting = true;
+        positionBar.setMaximum(Math.max(count, 1));
+        adjusting = false;
+        if (first < 0 && count > 0) {
+            show(0, Math.min(1, count - 1), -1);
+        } else {
+            viewportChanged();
+        }
+    }
+
+    /**
+     * Slides the window if the viewport is close to one of its ends
+     */
+    private void viewportChanged() {
+        if (adjusting || closed || first < 0) {
+            return;
+        }
+        var view = textPane.getVisibleRect();
+        var anchor = topOffset(view);
+        if (view.y + view.height * 2 >= textPane.getHeight() && last + 1 < source.getChunkCount()) {
+            var newLast = last + 1;
+            show(Math.max(first, newLast - WINDOW_SIZE + 1), newLast, anchor);
+        } else if (view.y <= view.height && first > 0) {
+            var newFirst = first - 1;
+            show(newFirst, Math.min(last, newFirst + WINDOW_SIZE - 1), anchor);
+        } else {
+            updatePositionBar(anchor);
+        }
+    }
+
+    /**
+     * Shows a chunk at the top of the viewport
+     */
+    private void jumpTo(int chunk) {
+        var count = source.getChunkCount();
+        if (chunk >= 0 && chunk < count && chunk != currentChunk()) {
+            show(chunk, Math.min(chunk + 1, count - 1), -1);
+        }
+    }
+
+    /**
+     * Returns the offset in the document of the character at the top of a rectangle of the text pane
+     */
+    private long topOffset(Rectangle view) {
+        return chunkStarts[0] + textPane.viewToModel2D(new Point(view.x, view.y));
+    }
+
+    private int currentChunk() {
+        if (first < 0) {
+            return -1;
+        }
+        return chunkAt(topOffset(textPane.getVisibleRect()));
+    }
+
+    private void updatePositionBar(long anchor) {
+        adjusting = true;
+        positionBar.setValue(chunkAt(anchor));
+        adjusting = false;
+    }
+
+    /**
+     * Finds the next or previous match of a search from the selection, wrapping around the document, and selects
+     * it. The chunks are searched on a background thread, and nothing happens if a search is already running.
+     *
+     * @param search  the search, which must not be used by anyone else until the result is received
+     * @param forward search towards the end of the document if true, towards the start otherwise
+     * @param result  called on the Event Dispatch Thread with true if a match was selected, false if none was found
+     */
+    void find(TextSearch search, boolean forward, Consumer<Boolean> result) {
+        if (finding || closed || first < 0) {
+            return;
+        }
+        var selectionStart = chunkStarts[0] + textPane.getSelectionStart();
+        var selectionEnd = chunkStarts[0] + textPane.getSelectionEnd();
+        var from = forward ? selectionEnd : selectionStart;
+        var chunk = chunkAt(from);
+        var emptySelection = selectionStart == selectionEnd;
+        var count = source.getChunkCount();
+
+        finding = true;
+        textPane.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        var thread = new Thread(() -> {
+            long[] match = null;
+            try {
+                match = search(search, forward, chunk, from, emptySelection, count);
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+            var found = match;
+            SwingUtilities.invokeLater(() -> {
+                finding = false;
+                textPane.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+                if (closed) {
+                    return;
+                }
+                if (found != null) {
+                    select((int) found[0], found[1], found[2]);
+                }
+                result.accept(found != null);
+            });
+        }, "Find");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Searches the chunks one after the other, starting in the middle of one and ending in the same one
+     *
+     * @return the index of the chunk holding the match, and the offsets in the document of its start and end,
+     * or null if there is none
+     */
+    private long[] search(TextSearch search, boolean forward, int chunk, long from, boolean emptySelection,
+                          int count) throws IOException {
+        for (int step = 0; step <= count && !closed; step++) {
+            var index = Math.floorMod(forward ? chunk + step : chunk - step, count);
+            var loaded = source.loadChunk(index);
+            var text = CharBuffer.wrap(loaded.text);
+            var local = (int) (from - loaded.start);
+            int found;
+            if (forward) {
+                var start = step == 0 ? local : 0;
+                found = search.findNext(text, start);
+                if (found == local && search.getMatchEnd() == found && emptySelection && step == 0) {
+                    // do not stay on an empty match at the caret
+                    found = search.findNext(text, local + 1);
+                }
+            } else {
+                var before = step == 0 ? local : text.length();
+                found = search.findPrevious(text, before);
+                if (found == local && search.getMatchEnd() == found && emptySelection && step == 0) {
+                    found = search.findPrevious(text, local - 1);
+                }
+            }
+            if (found >= 0) {
+                return new long[]{index, loaded.start + found, loaded.start + search.getMatchEnd()};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the loaded chunk holding an offset of the document
+     */
+    private int chunkAt(long offset) {
+        var chunk = first;
+        while (chunk < last && chunkStarts[chunk - first + 1] <= offset) {
+            chunk++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Selects a range of the document, loading its chunk first if needed, and scrolls it into view
+     */
+    private void select(int chunk, long start, long end) {
+        if (chunk < first || chunk > last) {
+            show(chunk, Math.min(chunk + 1, source.getChunkCount() - 1), start);
+        }
+        var local = (int) (start - chunkStarts[0]);
+        textPane.select(local, (int) (end - chunkStarts[0]));
+        try {
+            var bounds = textPane.modelToView2D(local);
+            if (bounds != null) {
+                textPane.scrollRectToVisible(bounds.getBounds());
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a range of chunks into the text pane, keeping the line holding a character at the same place
+     * on the screen if it is in the range, or showing the start of the range otherwise.
+     *
+     * @param newFirst the first chunk to be loaded
+     * @param newLast  the last chunk to be loaded
+     * @param anchor   the offset in the document of the character to be kept in place, or -1
+     */
+    private void show(int newFirst, int newLast, long anchor) {
+        var chunks = new ArrayList<TextChunk>();
+        try {
+            for (int i = newFirst; i <= newLast; i++) {
+                chunks.add(source.loadChunk(i));
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(textPane.getTopLevelAncestor(), e.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // the screen position of the anchor, and the selection in the document
+        var view = textPane.getVisibleRect();
+        var selectionStart = first >= 0 ? chunkStarts[0] + textPane.getSelectionStart() : -1;
+        var selectionEnd = first >= 0 ? chunkStarts[0] + textPane.getSelectionEnd() : -1;
+        var anchorY = 0;
+        if (anchor >= 0 && first >= 0) {
+            anchorY = view.y - lineY((int) (anchor - chunkStarts[0]));
+        }
+
+        var length = 0;
+        var runCount = 0;
+        for (var chunk : chunks) {
+            length += chunk.text.length;
+            runCount += chunk.runCount;
+        }
+        var text = new char[length];
+        var runLengths = new int[runCount];
+        var runAttributes = new AttributeSet[runCount];
+        var textOffset = 0;
+        var runOffset = 0;
+        var starts = new long[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            var chunk = chunks.get(i);
+            starts[i] = chunk.start;
+            System.arraycopy(chunk.text, 0, text, textOffset, chunk.text.length);
+            System.arraycopy(chunk.runLengths, 0, runLengths, runOffset, chunk.runCount);
+            System.arraycopy(chunk.runAttributes, 0, runAttributes, runOffset, chunk.runCount);
+            textOffset += chunk.text.length;
+            runOffset += chunk.runCount;
+        }
+
+        var document = new StylizedDocument();
+        try {
+            document.load(text, runLengths, runAttributes, runCount);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        adjusting = true;
+        try {
+            textPane.setStyledDocument(document);
+            first = newFirst;
+            last = newLast;
+            chunkStarts = starts;
+            scrollPane.validate();
+
+            var local = 0;
+            var y = 0;
+            if (anchor >= starts[0] && anchor <= starts[0] + length) {
+                local = (int) (anchor - starts[0]);
+                y = lineY(local) + anchorY;
+            }
+            var viewport = scrollPane.getViewport();
+            var maxY = Math.max(0, viewport.getViewSize().height - viewport.getExtentSize().height);
+            viewport.setViewPosition(new Point(viewport.getViewPosition().x,
+                    Math.max(0, Math.min(maxY, textPane.getY() + y))));
+            if (selectionStart >= starts[0] && selectionEnd <= starts[0] + length) {
+                textPane.select((int) (selectionStart - starts[0]), (int) (selectionEnd - starts[0]));
+            } else {
+                // keep the caret on the screen
+                var visible = textPane.getVisibleRect();
+                var middle = textPane.viewToModel2D(new Point(visible.x, visible.y + visible.height / 2));
+                textPane.setCaretPosition(Math.max(middle, 0));
+            }
+            updatePositionBar(starts[0] + local);
+        } finally {
+            adjusting = false;
+        }
+    }
+
+    /**
+     * Returns the top of the line holding a character in the text pane, or 0 if the text pane is not laid out
+     */
+    private int lineY(int offset) {
+        try {
+            var bounds = textPane.modelToView2D(offset);
+            return bounds == null ? 0 : (int) bounds.getY();
+        } catch (BadLocationException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link ChunkSource} reading a document in the compressed binary .std format.
+ * The chunks of the file are the chunks of the source: the index at the end of the file is read when it is
+ * opened, and each chunk is only decompressed when it is loaded.
+ */
+final class CompressedDocumentSource implements ChunkSource {
+    private final FileChannel channel;
+    private final DocumentFormat.ChunkIndex index;
+
+    private CompressedDocumentSource(FileChannel channel, DocumentFormat.ChunkIndex index) {
+        this.channel = channel;
+        this.index = index;
+    }
+
+    /**
+     * Opens a compressed document file
+     *
+     * @param path the file
+     * @return the source
+     * @throws IOException if the file cannot be read or is not in the compressed format
+     */
+    static CompressedDocumentSource open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new CompressedDocumentSource(channel, DocumentFormat.readChunkIndex(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getChunkCount() {
+        return index.count;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return true;
+    }
+
+    @Override
+    public TextChunk loadChunk(int index) throws IOException {
+        if (index < 0 || index >= this.index.count) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " does not exist");
+        }
+        return DocumentFormat.readChunk(channel, this.index, index);
+    }
+
+    @Override
+    public void addChangeListener(Runnable listener) {
+        // all the chunks are known from the start
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * A read-only {@link CharSequence} view of a range of a {@link Document}.
+ * Characters are read through a {@link Segment} with partial return enabled, so the view shares the
+ * document's own storage a chunk at a time instead of copying the text.
+ * The view is only valid while the document is not modified; callers should hold a read lock,
+ * for example by using it inside {@link Document#render(Runnable)}.
+ */
+final class DocumentCharSequence implements CharSequence {
+    /**
+     * How far before a requested offset to start reading, so that scanning backwards does not
+     * fetch a new segment for every character
+     */
+    private static final int LOOK_BEHIND = 1024;
+
+    private final Document document;
+    private final int start;
+    private final int end;
+    private final Segment segment = new Segment();
+    // the range of the document held in the segment
+    private int segmentStart;
+    private int segmentEnd;
+
+    /**
+     * Creates a view of the whole document
+     *
+     * @param document the document
+     */
+    DocumentCharSequence(Document document) {
+        this(document, 0, document.getLength());
+    }
+
+    /**
+     * Creates a view of a range of the document
+     *
+     * @param document the document
+     * @param start    the start offset of the range
+     * @param end      the end offset of the range, exclusive
+     */
+    DocumentCharSequence(Document document, int start, int end) {
+        this.document = document;
+        this.start = start;
+        this.end = end;
+        segment.setPartialReturn(true);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        var offset = start + index;
+        if (offset < segmentStart || offset >= segmentEnd) {
+            load(offset);
+        }
+        return segment.array[segment.offset + offset - segmentStart];
+    }
+
+    /**
+     * Reads the segment containing an offset, starting a little before it if the segment allows.
+     *
+     * @param offset the document offset to be read
+     */
+    private void load(int offset) {
+        try {
+            var from = Math.max(start, offset - LOOK_BEHIND);
+            document.getText(from, end - from, segment);
+            if (from + segment.count <= offset) {
+                // the segment ended before the offset
+                from = offset;
+                document.getText(from, end - from, segment);
+            }
+            segmentStart = from;
+            segmentEnd = from + segment.count;
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new DocumentCharSequence(document, this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return document.getText(start, end - start);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,1232 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes styled documents in the binary .std format.
+ * <p>
+ * A file starts with the magic bytes {@code STDF} and a version byte, followed by three sections:
+ * <ol>
+ * <li>the style dictionary: each distinct set of character attributes used in the document, once</li>
+ * <li>the text: its length in chars, its length in bytes and the text encoded as UTF-8</li>
+ * <li>the runs: the length of each run of characters with the same attributes and the index of its style</li>
+ * </ol>
+ * Counts, lengths and indices are written as unsigned variable-length integers.
+ * Version 1 files do not have the length of the text in bytes.
+ * <p>
+ * Compressed files start with the magic bytes {@code STDZ}, a version byte, the style dictionary and the length
+ * of the text. The text follows as chunks of about {@link #CHUNK_SIZE} chars ending at line breaks where possible,
+ * each compressed on its own with a {@link Deflater} together with the runs inside it, so that the chunks can be
+ * decompressed in parallel or one at a time. An index at the end of the file gives the length in chars,
+ * the compressed size and the decompressed size of each chunk; it is found through its position,
+ * written as a 64-bit integer just before the magic bytes repeated at the very end.
+ * <p>
+ * Attribute keys are either one of the {@link StyleConstants} character attributes or strings, and values
+ * can be booleans, integers, floats, strings or colors; other attributes are not saved.
+ * <p>
+ * Files written by older versions of the editor, which hold a serialized
+ * {@link javax.swing.text.DefaultStyledDocument}, are recognized by the Java serialization header
+ * and can still be read.
+ */
+final class DocumentFormat {
+    private static final byte[] MAGIC = {'S', 'T', 'D', 'F'};
+    private static final int VERSION = 2;
+    private static final byte[] COMPRESSED_MAGIC = {'S', 'T', 'D', 'Z'};
+    private static final int COMPRESSED_VERSION = 1;
+    private static final int TRAILER_SIZE = 8 + COMPRESSED_MAGIC.length;
+    private static final short SERIALIZATION_MAGIC = (short) 0xACED;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The compression level of files written without compression. It is outside the range of the {@link Deflater}
+     * levels, so that {@link Deflater#DEFAULT_COMPRESSION} still compresses.
+     */
+    static final int UNCOMPRESSED = Integer.MIN_VALUE;
+
+    /**
+     * The compression level offered by default, which compresses nearly as well as the best one
+     */
+    static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * The number of chars after which a compressed chunk ends at the next line break
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of chars after which a compressed chunk ends even without a line break
+     */
+    private static final int MAX_CHUNK_SIZE = CHUNK_SIZE * 4;
+
+    /**
+     * The {@link StyleConstants} keys which are saved, written as their index in this array
+     */
+    private static final Object[] KNOWN_KEYS = {
+            StyleConstants.NameAttribute, StyleConstants.FontFamily, StyleConstants.FontSize,
+            StyleConstants.Bold, StyleConstants.Italic, StyleConstants.Underline, StyleConstants.StrikeThrough,
+            StyleConstants.Superscript, StyleConstants.Subscript, StyleConstants.Foreground,
+            StyleConstants.Background,
+    };
+
+    // key types
+    private static final int KNOWN_KEY = 0;
+    private static final int STRING_KEY = 1;
+
+    // value types
+    private static final int BOOLEAN_VALUE = 0;
+    private static final int INTEGER_VALUE = 1;
+    private static final int FLOAT_VALUE = 2;
+    private static final int STRING_VALUE = 3;
+    private static final int COLOR_VALUE = 4;
+
+    private DocumentFormat() {
+    }
+
+    /**
+     * Writes a document to a channel. The caller should hold a read lock on the document.
+     *
+     * @param document the document to be written
+     * @param channel  the channel
+     * @throws IOException if the channel cannot be written
+     */
+    static void write(StyledDocument document, WritableByteChannel channel) throws IOException {
+        snapshot(document).write(channel, null);
+    }
+
+    /**
+     * Copies the text and the runs of a document, so that it can be written while the document changes.
+     * The caller should hold a read lock on the document.
+     *
+     * @param document the document
+     * @return the copy, sharing nothing mutable with the document
+     */
+    static Snapshot snapshot(StyledDocument document) {
+        var length = document.getLength();
+        var text = new char[length];
+        var segment = new Segment();
+        segment.setPartialReturn(true);
+        try {
+            for (int offset = 0; offset < length; offset += segment.count) {
+                document.getText(offset, length - offset, segment);
+                System.arraycopy(segment.array, segment.offset, text, offset, segment.count);
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // merge adjacent runs with equal attributes and intern the attribute sets
+        var styles = new LinkedHashMap<AttributeSet, Integer>();
+        var styleOfRun = new IdentityHashMap<AttributeSet, Integer>();
+        var runLengths = new int[16];
+        var runStyles = new int[16];
+        var runCount = 0;
+        // the runs are visited through the element tree, which is faster than looking up each offset
+        var root = document.getDefaultRootElement();
+        for (int p = 0; p < root.getElementCount(); p++) {
+            var paragraph = root.getElement(p);
+            for (int r = 0; r < paragraph.getElementCount(); r++) {
+                var run = paragraph.getElement(r);
+                var runLength = Math.min(run.getEndOffset(), length) - run.getStartOffset();
+                if (runLength <= 0) {
+                    continue;
+                }
+                // attribute sets from a StyleContext are shared, so most runs are found by identity
+                var runAttributes = run.getAttributes().copyAttributes();
+                var style = styleOfRun.get(runAttributes);
+                if (style == null) {
+                    style = styles.computeIfAbsent(savedAttributes(runAttributes), key -> styles.size());
+                    styleOfRun.put(runAttributes, style);
+                }
+                if (runCount > 0 && runStyles[runCount - 1] == style) {
+                    runLengths[runCount - 1] += runLength;
+                } else {
+                    if (runCount == runLengths.length) {
+                        runLengths = Arrays.copyOf(runLengths, runCount * 2);
+                        runStyles = Arrays.copyOf(runStyles, runCount * 2);
+                    }
+                    runLengths[runCount] = runLength;
+                    runStyles[runCount++] = style;
+                }
+            }
+        }
+        return new Snapshot(text, styles.keySet().toArray(new AttributeSet[0]), runLengths, runStyles, runCount);
+    }
+
+    /**
+     * Reads a document from a file in the binary format or in the serialized format of older versions
+     *
+     * @param path the file
+     * @return the document
+     * @throws IOException if the file cannot be read or is not a styled document
+     */
+    static StylizedDocument read(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var header = readMagic(channel);
+            if (header.remaining() >= 2 && header.getShort(0) == SERIALIZATION_MAGIC) {
+                return readSerialized(channel);
+            }
+            if (header.equals(ByteBuffer.wrap(COMPRESSED_MAGIC))) {
+                return readCompressed(channel);
+            }
+            if (!header.equals(ByteBuffer.wrap(MAGIC))) {
+                throw new IOException("Unsupported file format!");
+            }
+            return read(channel);
+        }
+    }
+
+    /**
+     * Checks whether a file is in the compressed binary format
+     *
+     * @param path the file
+     * @return true if the file starts like a compressed file
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isCompressed(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readMagic(channel).equals(ByteBuffer.wrap(COMPRESSED_MAGIC));
+        }
+    }
+
+    /**
+     * Reads the first bytes of a file, leaving the channel at its start
+     */
+    private static ByteBuffer readMagic(FileChannel channel) throws IOException {
+        var header = ByteBuffer.allocate(MAGIC.length);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // read the whole header
+        }
+        header.flip();
+        channel.position(0);
+        return header;
+    }
+
+    /**
+     * Reads a compressed document, decompressing its chunks in parallel
+     */
+    private static StylizedDocument readCompressed(FileChannel channel) throws IOException {
+        var index = readChunkIndex(channel);
+        TextChunk[] chunks;
+        try {
+            chunks = IntStream.range(0, index.count).parallel().mapToObj(i -> {
+                try {
+                    return readChunk(channel, index, i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray(TextChunk[]::new);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var text = new char[index.textLength];
+        var runCount = 0;
+        for (var chunk : chunks) {
+            runCount += chunk.runCount;
+        }
+        var runLengths = new int[runCount];
+        var runAttributes = new AttributeSet[runCount];
+        runCount = 0;
+        for (var chunk : chunks) {
+            System.arraycopy(chunk.text, 0, text, (int) chunk.start, chunk.text.length);
+            for (int i = 0; i < chunk.runCount; i++) {
+                // runs crossing a chunk boundary were split, the styles are shared
+                if (runCount > 0 && runAttributes[runCount - 1] == chunk.runAttributes[i]) {
+                    runLengths[runCount - 1] += chunk.runLengths[i];
+                } else {
+                    runLengths[runCount] = chunk.runLengths[i];
+                    runAttributes[runCount++] = chunk.runAttributes[i];
+                }
+            }
+        }
+
+        var document = new StylizedDocument();
+        try {
+            document.load(text, runLengths, runAttributes, runCount);
+        } catch (BadLocationException e) {
+            throw new IOException("Corrupt file: " + e.getMessage());
+        }
+        return document;
+    }
+
+    /**
+     * Reads the styles and the chunk index of a compressed file
+     *
+     * @param channel the file, which is read with absolute positions only
+     * @return the index
+     * @throws IOException if the file cannot be read or is not a valid compressed document
+     */
+    static ChunkIndex readChunkIndex(FileChannel channel) throws IOException {
+        var size = channel.size();
+        if (size < COMPRESSED_MAGIC.length + TRAILER_SIZE) {
+            throw new IOException("Corrupt file: too short");
+        }
+        var trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        var footerStart = trailer.getLong();
+        var magic = new byte[COMPRESSED_MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, COMPRESSED_MAGIC) || footerStart < 0 || footerStart > size - TRAILER_SIZE) {
+            throw new IOException("Corrupt file: the chunk index is missing");
+        }
+
+        // the chunks start right after the header, however long its styles are
+        var footer = new Input(readFully(channel, footerStart, (int) (size - TRAILER_SIZE - footerStart)));
+        var position = footer.varLong();
+        if (position < COMPRESSED_MAGIC.length || position > footerStart) {
+            throw new IOException("Corrupt file: the chunk index is missing");
+        }
+        var input = new Input(readFully(channel, 0, (int) position));
+        input.bytes(magic);
+        if (!Arrays.equals(magic, COMPRESSED_MAGIC)) {
+            throw new IOException("Unsupported file format!");
+        }
+        var version = input.u8();
+        if (version != COMPRESSED_VERSION) {
+            throw new IOException("Unsupported file version " + version);
+        }
+        var styles = new AttributeSet[input.varInt()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = readAttributes(input);
+        }
+        var textLength = input.varInt();
+
+        var count = footer.varInt();
+        var charStarts = new int[count + 1];
+        var offsets = new long[count + 1];
+        var uncompressedLengths = new int[count];
+        offsets[0] = position;
+        for (int i = 0; i < count; i++) {
+            charStarts[i + 1] = charStarts[i] + footer.varInt();
+            offsets[i + 1] = offsets[i] + footer.varInt();
+            uncompressedLengths[i] = footer.varInt();
+        }
+        if (charStarts[count] != textLength || offsets[count] > footerStart) {
+            throw new IOException("Corrupt file: the chunk index does not match the text");
+        }
+        return new ChunkIndex(styles, textLength, count, charStarts, offsets, uncompressedLengths);
+    }
+
+    /**
+     * Decompresses a chunk of a compressed file. Can be called on several threads at once.
+     *
+     * @param channel the file, which is read with absolute positions only
+     * @param index   the index of the file
+     * @param chunk   the number of the chunk
+     * @return the chunk
+     * @throws IOException if the file cannot be read or the chunk is not valid
+     */
+    static TextChunk readChunk(FileChannel channel, ChunkIndex index, int chunk) throws IOException {
+        var compressed = readFully(channel, index.offsets[chunk], (int) (index.offsets[chunk + 1] - index.offsets[chunk]));
+        var bytes = new byte[index.uncompressedLengths[chunk]];
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            var length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                var count = inflater.inflate(bytes, length, bytes.length - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != bytes.length) {
+                throw new IOException("Corrupt file: chunk " + chunk + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt file: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        var input = new Input(ByteBuffer.wrap(bytes));
+        var start = index.charStarts[chunk];
+        var text = new char[index.charStarts[chunk + 1] - start];
+        input.text(CharBuffer.wrap(text));
+        var runCount = input.varInt();
+        var runLengths = new int[runCount];
+        var runAttributes = new AttributeSet[runCount];
+        var covered = 0L;
+        for (int i = 0; i < runCount; i++) {
+            runLengths[i] = input.varInt();
+            covered += runLengths[i];
+            var style = input.varInt();
+            if (style >= index.styles.length) {
+                throw new IOException("Corrupt file: unknown style " + style);
+            }
+            runAttributes[i] = index.styles[style];
+        }
+        if (covered != text.length) {
+            throw new IOException("Corrupt file: the runs of chunk " + chunk + " do not match its text");
+        }
+        return new TextChunk(chunk, start, text, runLengths, runAttributes, runCount);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a document in the binary format from a channel
+     *
+     * @param channel the channel
+     * @return the document
+     * @throws IOException if the channel cannot be read or does not hold a valid document
+     */
+    static StylizedDocument read(ReadableByteChannel channel) throws IOException {
+        var input = new Input(channel);
+        var header = readHeader(input);
+        var text = new char[header.textLength];
+        input.text(CharBuffer.wrap(text));
+        var styles = header.styles;
+
+        var runCount = input.varInt();
+        var runLengths = new int[runCount];
+        var runAttributes = new AttributeSet[runCount];
+        for (int i = 0; i < runCount; i++) {
+            runLengths[i] = input.varInt();
+            var style = input.varInt();
+            if (style >= styles.length) {
+                throw new IOException("Corrupt file: unknown style " + style);
+            }
+            runAttributes[i] = styles[style];
+        }
+
+        var document = new StylizedDocument();
+        try {
+            document.load(text, runLengths, runAttributes, runCount);
+        } catch (BadLocationException e) {
+            throw new IOException("Corrupt file: " + e.getMessage());
+        }
+        return document;
+    }
+
+    /**
+     * Reads the part of a file in the binary format before the text. The channel may be read further than that.
+     *
+     * @param channel the channel, at the start of the file
+     * @return the header, with the position of the text in the channel
+     * @throws IOException if the channel cannot be read or does not hold a valid document
+     */
+    static Header readHeader(ReadableByteChannel channel) throws IOException {
+        return readHeader(new Input(channel));
+    }
+
+    private static Header readHeader(Input input) throws IOException {
+        var magic = new byte[MAGIC.length];
+        input.bytes(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Unsupported file format!");
+        }
+        var version = input.u8();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported file version " + version);
+        }
+
+        var styles = new AttributeSet[input.varInt()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = readAttributes(input);
+        }
+
+        var textLength = input.varInt();
+        var textBytes = version >= 2 ? input.varLong() : -1;
+        return new Header(styles, textLength, input.position(), textBytes);
+    }
+
+    /**
+     * Reads a variable-length integer from a buffer
+     *
+     * @param buffer the buffer, positioned at the integer
+     * @return the integer
+     * @throws IOException if the integer is invalid
+     */
+    static int readVarInt(ByteBuffer buffer) throws IOException {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            var b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Corrupt file: negative count");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Corrupt file: invalid number");
+    }
+
+    /**
+     * Computes the number of bytes of text encoded as UTF-8 by {@link Output#text(CharBuffer, IntConsumer)}
+     */
+    private static long utf8Length(CharSequence text) {
+        var bytes = 0L;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++; // replaced by '?'
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * A copy of the contents of a document, ready to be written
+     */
+    static final class Snapshot {
+        private final char[] text;
+        private final AttributeSet[] styles;
+        private final int[] runLengths;
+        private final int[] runStyles;
+        private final int runCount;
+
+        private Snapshot(char[] text, AttributeSet[] styles, int[] runLengths, int[] runStyles, int runCount) {
+            this.text = text;
+            this.styles = styles;
+            this.runLengths = runLengths;
+            this.runStyles = runStyles;
+            this.runCount = runCount;
+        }
+
+        /**
+         * Returns the length of the text
+         *
+         * @return the number of chars in the text
+         */
+        int getLength() {
+            return text.length;
+        }
+
+        /**
+         * Builds a new document from the snapshot, as if it had been written and read back
+         *
+         * @return the document
+         */
+        StylizedDocument toDocument() {
+            var runAttributes = new AttributeSet[runCount];
+            for (int i = 0; i < runCount; i++) {
+                runAttributes[i] = styles[runStyles[i]];
+            }
+            var document = new StylizedDocument();
+            try {
+                document.load(text, runLengths, runAttributes, runCount);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            return document;
+        }
+
+        /**
+         * Writes the text of the document to a channel as a plain text file, leaving out its formatting
+         *
+         * @param channel  the channel
+         * @param progress called with the number of chars of the text written so far, or null
+         * @throws IOException if the channel cannot be written
+         * @see PlainTextFormat#write(CharBuffer, WritableByteChannel, IntConsumer)
+         */
+        void writeText(WritableByteChannel channel, IntConsumer progress) throws IOException {
+            PlainTextFormat.write(CharBuffer.wrap(text), channel, progress);
+        }
+
+        /**
+         * Writes the document to a channel, compressed or not
+         *
+         * @param channel  the channel
+         * @param level    a {@link Deflater} compression level, or {@link #UNCOMPRESSED}
+         * @param progress called with the number of chars of the text written so far as the text is written,
+         *                 or null
+         * @throws IOException if the channel cannot be written
+         */
+        void write(WritableByteChannel channel, int level, IntConsumer progress) throws IOException {
+            if (level == UNCOMPRESSED) {
+                write(channel, progress);
+            } else {
+                writeCompressed(channel, level, progress);
+            }
+        }
+
+        /**
+         * Writes the document to a channel
+         *
+         * @param channel  the channel
+         * @param progress called with the number of chars of the text written so far as the text is written,
+         *                 or null
+         * @throws IOException if the channel cannot be written
+         */
+        void write(WritableByteChannel channel, IntConsumer progress) throws IOException {
+            var output = new Output(channel);
+            output.bytes(MAGIC);
+            output.u8(VERSION);
+
+            output.varInt(styles.length);
+            for (var attributes : styles) {
+                writeAttributes(output, attributes);
+            }
+
+            var textBuffer = CharBuffer.wrap(text);
+            output.varInt(text.length);
+            output.varLong(utf8Length(textBuffer));
+            output.text(textBuffer, progress);
+
+            output.varInt(runCount);
+            for (int i = 0; i < runCount; i++) {
+                output.varInt(runLengths[i]);
+                output.varInt(runStyles[i]);
+            }
+            output.flush();
+        }
+
+        /**
+         * Writes the document as compressed chunks. The chunks are compressed in parallel, a few at a time,
+         * and written in order.
+         */
+        private void writeCompressed(WritableByteChannel channel, int level, IntConsumer progress)
+                throws IOException {
+            var output = new Output(channel);
+            output.bytes(COMPRESSED_MAGIC);
+            output.u8(COMPRESSED_VERSION);
+            output.varInt(styles.length);
+            for (var attributes : styles) {
+                writeAttributes(output, attributes);
+            }
+            output.varInt(text.length);
+            var dataStart = output.position();
+
+            var chunkLengths = new int[16];
+            var compressedLengths = new int[16];
+            var uncompressedLengths = new int[16];
+            var count = 0;
+            var written = 0;
+            var window = new ArrayDeque<CompletableFuture<CompressedChunk>>();
+            var maxWindow = Runtime.getRuntime().availableProcessors() * 2;
+            var run = 0;
+            var runStart = 0;
+            for (int start = 0; start < text.length || !window.isEmpty(); ) {
+                // keep a few chunks being compressed while the oldest one is written
+                while (start < text.length && window.size() < maxWindow) {
+                    var chunkStart = start;
+                    var end = chunkEnd(text, chunkStart);
+                    var firstRun = run;
+                    var firstRunStart = runStart;
+                    window.add(CompletableFuture.supplyAsync(() ->
+                            compressChunk(chunkStart, end, firstRun, firstRunStart, level)));
+                    while (run < runCount && runStart + runLengths[run] <= end) {
+                        runStart += runLengths[run++];
+                    }
+                    if (count + window.size() > chunkLengths.length) {
+                        chunkLengths = Arrays.copyOf(chunkLengths, chunkLengths.length * 2);
+                        compressedLengths = Arrays.copyOf(compressedLengths, chunkLengths.length);
+                        uncompressedLengths = Arrays.copyOf(uncompressedLengths, chunkLengths.length);
+                    }
+                    chunkLengths[count + window.size() - 1] = end - chunkStart;
+                    start = end;
+                }
+                CompressedChunk chunk;
+                try {
+                    chunk = window.remove().join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw e;
+                }
+                output.bytes(chunk.data);
+                compressedLengths[count] = chunk.data.length;
+                uncompressedLengths[count] = chunk.rawLength;
+                written += chunkLengths[count++];
+                if (progress != null) {
+                    progress.accept(written);
+                }
+            }
+
+            var footerStart = output.position();
+            output.varLong(dataStart);
+            output.varInt(count);
+            for (int i = 0; i < count; i++) {
+                output.varInt(chunkLengths[i]);
+                output.varInt(compressedLengths[i]);
+                output.varInt(uncompressedLengths[i]);
+            }
+            output.i64(footerStart);
+            output.bytes(COMPRESSED_MAGIC);
+            output.flush();
+        }
+
+        /**
+         * Encodes and compresses the text and the runs of a chunk
+         *
+         * @return the compressed chunk
+         */
+        private CompressedChunk compressChunk(int start, int end, int run, int runStart, int level) {
+            var bytes = new ByteArrayOutputStream();
+            var output = new Output(Channels.newChannel(bytes));
+            try {
+                output.text(CharBuffer.wrap(text, start, end - start), null);
+                var firstRun = run;
+                var runs = 0;
+                for (int position = runStart; run < runCount && position < end; position += runLengths[run++]) {
+                    runs++;
+                }
+                output.varInt(runs);
+                for (int i = firstRun, position = runStart; i < firstRun + runs; position += runLengths[i++]) {
+                    output.varInt(Math.min(position + runLengths[i], end) - Math.max(position, start));
+                    output.varInt(runStyles[i]);
+                }
+                output.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            var raw = bytes.toByteArray();
+            var deflater = new Deflater(level);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                var compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+                var buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    var count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+                return new CompressedChunk(compressed.toByteArray(), raw.length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Returns where a compressed chunk starting at an offset ends: after the first line break once the chunk
+     * is {@link #CHUNK_SIZE} chars long, or after {@link #MAX_CHUNK_SIZE} chars without splitting
+     * a surrogate pair
+     */
+    private static int chunkEnd(char[] text, int start) {
+        var end = Math.min(text.length, start + CHUNK_SIZE);
+        var limit = Math.min(text.length, start + MAX_CHUNK_SIZE);
+        while (end < limit && text[end - 1] != '\n') {
+            end++;
+        }
+        if (end < text.length && text[end - 1] != '\n' && Character.isHighSurrogate(text[end - 1])) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * A chunk compressed for writing, with the length of its bytes before compression
+     */
+    private static final class CompressedChunk {
+        final byte[] data;
+        final int rawLength;
+
+        CompressedChunk(byte[] data, int rawLength) {
+            this.data = data;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * The styles and the chunks of a compressed file
+     */
+    static final class ChunkIndex {
+        final AttributeSet[] styles;
+        final int textLength;
+        final int count;
+        // the offset of each chunk in the text and in the file, with the end of the last chunk
+        final int[] charStarts;
+        final long[] offsets;
+        final int[] uncompressedLengths;
+
+        ChunkIndex(AttributeSet[] styles, int textLength, int count, int[] charStarts, long[] offsets,
+                   int[] uncompressedLengths) {
+            this.styles = styles;
+            this.textLength = textLength;
+            this.count = count;
+            this.charStarts = charStarts;
+            this.offsets = offsets;
+            this.uncompressedLengths = uncompressedLengths;
+        }
+    }
+
+    /**
+     * The styles and the location of the text of a file in the binary format
+     */
+    static final class Header {
+        final AttributeSet[] styles;
+        final int textLength;
+        final long textStart;
+        final long textBytes;
+
+        /**
+         * @param styles     the style dictionary
+         * @param textLength the length of the text in chars
+         * @param textStart  the position of the text in the file
+         * @param textBytes  the length of the text in bytes, or -1 if it is not known
+         */
+        Header(AttributeSet[] styles, int textLength, long textStart, long textBytes) {
+            this.styles = styles;
+            this.textLength = textLength;
+            this.textStart = textStart;
+            this.textBytes = textBytes;
+        }
+    }
+
+    /**
+     * Reads a file written with Java serialization by older versions of the editor
+     */
+    private static StylizedDocument readSerialized(FileChannel channel) throws IOException {
+        try {
+            var ois = new ObjectInputStream(Channels.newInputStream(channel));
+            var document = (StyledDocument) ois.readObject();
+            if (document instanceof StylizedDocument) {
+                return (StylizedDocument) document;
+            }
+            // files written before StylizedDocument existed hold a DefaultStyledDocument
+            return new StylizedDocument(document);
+        } catch (ClassNotFoundException | ClassCastException | BadLocationException e) {
+            throw new IOException("Unsupported file format!");
+        }
+    }
+
+    /**
+     * Writes a set of attributes returned by {@link #savedAttributes(AttributeSet)}
+     *
+     * @param output     the output
+     * @param attributes the attributes
+     * @throws IOException if the output cannot be written
+     */
+    static void writeAttributes(Output output, AttributeSet attributes) throws IOException {
+        output.varInt(attributes.getAttributeCount());
+        for (var names = attributes.getAttributeNames(); names.hasMoreElements(); ) {
+            var key = names.nextElement();
+            writeKey(output, key);
+            writeValue(output, attributes.getAttribute(key));
+        }
+    }
+
+    /**
+     * Reads a set of attributes written by {@link #writeAttributes(Output, AttributeSet)}
+     *
+     * @param input the input
+     * @return the attributes
+     * @throws IOException if the input cannot be read or does not hold valid attributes
+     */
+    static AttributeSet readAttributes(Input input) throws IOException {
+        var attributes = new SimpleAttributeSet();
+        for (int count = input.varInt(); count > 0; count--) {
+            var key = readKey(input);
+            var value = readValue(input);
+            attributes.addAttribute(key, value);
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the attributes of a run which can be saved
+     *
+     * @param attributes the attributes of the run
+     * @return a copy holding only the attributes which can be written
+     */
+    static AttributeSet savedAttributes(AttributeSet attributes) {
+        var saved = new SimpleAttributeSet();
+        for (var names = attributes.getAttributeNames(); names.hasMoreElements(); ) {
+            var key = names.nextElement();
+            var value = attributes.getAttribute(key);
+            if ((key instanceof String || indexOfKey(key) >= 0) && valueType(value) >= 0) {
+                saved.addAttribute(key, value);
+            }
+        }
+        return saved;
+    }
+
+    private static int indexOfKey(Object key) {
+        for (int i = 0; i < KNOWN_KEYS.length; i++) {
+            if (KNOWN_KEYS[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int valueType(Object value) {
+        if (value instanceof Boolean) {
+            return BOOLEAN_VALUE;
+        } else if (value instanceof Integer) {
+            return INTEGER_VALUE;
+        } else if (value instanceof Float) {
+            return FLOAT_VALUE;
+        } else if (value instanceof String) {
+            return STRING_VALUE;
+        } else if (value instanceof Color) {
+            return COLOR_VALUE;
+        }
+        return -1;
+    }
+
+    private static void writeKey(Output output, Object key) throws IOException {
+        var index = indexOfKey(key);
+        if (index >= 0) {
+            output.u8(KNOWN_KEY);
+            output.varInt(index);
+        } else {
+            output.u8(STRING_KEY);
+            output.string((String) key);
+        }
+    }
+
+    private static Object readKey(Input input) throws IOException {
+        var type = input.u8();
+        if (type == KNOWN_KEY) {
+            var index = input.varInt();
+            if (index >= KNOWN_KEYS.length) {
+                throw new IOException("Corrupt file: unknown attribute " + index);
+            }
+            return KNOWN_KEYS[index];
+        } else if (type == STRING_KEY) {
+            return input.string();
+        }
+        throw new IOException("Corrupt file: unknown attribute type " + type);
+    }
+
+    private static void writeValue(Output output, Object value) throws IOException {
+        var type = valueType(value);
+        output.u8(type);
+        switch (type) {
+            case BOOLEAN_VALUE:
+                output.u8((Boolean) value ? 1 : 0);
+                break;
+            case INTEGER_VALUE:
+                output.i32((Integer) value);
+                break;
+            case FLOAT_VALUE:
+                output.i32(Float.floatToIntBits((Float) value));
+                break;
+            case STRING_VALUE:
+                output.string((String) value);
+                break;
+            case COLOR_VALUE:
+                output.i32(((Color) value).getRGB());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported attribute value " + value);
+        }
+    }
+
+    private static Object readValue(Input input) throws IOException {
+        var type = input.u8();
+        switch (type) {
+            case BOOLEAN_VALUE:
+                return input.u8() != 0;
+            case INTEGER_VALUE:
+                return input.i32();
+            case FLOAT_VALUE:
+                return Float.intBitsToFloat(input.i32());
+            case STRING_VALUE:
+                return input.string();
+            case COLOR_VALUE:
+                return new Color(input.i32(), true);
+            default:
+                throw new IOException("Corrupt file: unknown value type " + type);
+        }
+    }
+
+    /**
+     * Writes primitive values to a channel through a buffer
+     */
+    static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // the number of bytes written to the channel
+        private long written;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Returns the position of the next byte to be written in the channel
+         */
+        long position() {
+            return written + buffer.position();
+        }
+
+        /**
+         * Makes room for some bytes in the buffer
+         */
+        private void ensure(int count) throws IOException {
+            if (buffer.remaining() < count) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            written += buffer.position();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        void u8(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void i32(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void i64(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void varInt(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void varLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void bytes(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                var count = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, count);
+                offset += count;
+            }
+        }
+
+        void string(String string) throws IOException {
+            var bytes = string.getBytes(StandardCharsets.UTF_8);
+            varInt(bytes.length);
+            bytes(bytes);
+        }
+
+        /**
+         * Encodes text as UTF-8 straight into the buffer. Unpaired surrogates are written as '?',
+         * so the text read back has the same length.
+         *
+         * @param progress called with the number of chars written each time the buffer is drained, or null
+         */
+        void text(CharBuffer text, IntConsumer progress) throws IOException {
+            var encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            while (true) {
+                var result = encoder.encode(text, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                    if (progress != null) {
+                        progress.accept(text.position());
+                    }
+                } else {
+                    break;
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Reads primitive values from a channel through a buffer
+     */
+    static final class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        // the number of bytes read from the channel
+        private long read;
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.flip();
+        }
+
+        /**
+         * Reads the remaining bytes of a buffer, without a channel
+         *
+         * @param bytes the buffer
+         */
+        Input(ByteBuffer bytes) {
+            channel = null;
+            buffer = bytes;
+            read = bytes.remaining();
+        }
+
+        /**
+         * Reads more bytes from the channel
+         *
+         * @return false at the end of the channel
+         */
+        private boolean fill() throws IOException {
+            if (channel == null) {
+                return false;
+            }
+            buffer.compact();
+            try {
+                var count = channel.read(buffer);
+                read += Math.max(count, 0);
+                return count >= 0;
+            } finally {
+                buffer.flip();
+            }
+        }
+
+        /**
+         * Makes sure that some bytes are in the buffer
+         */
+        private void ensure(int count) throws IOException {
+            while (buffer.remaining() < count) {
+                if (!fill()) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+        }
+
+        /**
+         * Returns the position of the next byte to be read in the channel
+         */
+        long position() {
+            return read - buffer.remaining();
+        }
+
+        int u8() throws IOException {
+            ensure(1);
+            return buffer.get() & 0xFF;
+        }
+
+        int i32() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        int varInt() throws IOException {
+            var value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                var b = u8();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IOException("Corrupt file: negative count");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt file: invalid number");
+        }
+
+        long varLong() throws IOException {
+            var value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                var b = u8();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IOException("Corrupt file: negative length");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt file: invalid number");
+        }
+
+        void bytes(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                var count = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.get(bytes, offset, count);
+                offset += count;
+            }
+        }
+
+        String string() throws IOException {
+            var bytes = new byte[varInt()];
+            bytes(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodes UTF-8 text from the buffer until the given char buffer is full
+         */
+        void text(CharBuffer text) throws IOException {
+            var decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            while (text.hasRemaining()) {
+                var result = decoder.decode(buffer, text, false);
+                if (result.isOverflow() && text.hasRemaining()) {
+                    throw new IOException("Corrupt file: the text is longer than its length");
+                }
+                if (result.isUnderflow() && text.hasRemaining() && !fill()) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes document snapshots to files on a background thread.
+ * <p>
+ * A snapshot is first written to a temporary file in the directory of the target, which is forced to the disk
+ * and then renamed over the target in one step. If the editor dies in the middle of a save, the target still
+ * holds its old contents, and only a temporary file is left behind. Saves run one at a time, in the order
+ * in which they were requested.
+ */
+final class DocumentSaver {
+    /**
+     * The shortest time in milliseconds between two progress reports
+     */
+    private static final long PROGRESS_INTERVAL = 100;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "Save documents");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Receives the progress of a save on the Event Dispatch Thread
+     */
+    interface Listener {
+        /**
+         * Called while the text is being written
+         *
+         * @param percent the part of the text written so far
+         */
+        void progress(int percent);
+
+        /**
+         * Called once the target holds the new contents
+         */
+        void saved();
+
+        /**
+         * Called if the save failed, the target is left unchanged
+         *
+         * @param e the cause
+         */
+        void failed(IOException e);
+    }
+
+    /**
+     * Writes the new contents of a file
+     */
+    interface Contents {
+        /**
+         * Writes the contents
+         *
+         * @param channel the channel of the temporary file
+         * @throws IOException if the channel cannot be written
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+    private DocumentSaver() {
+    }
+
+    /**
+     * Starts writing a snapshot to a file
+     *
+     * @param snapshot the contents of the document
+     * @param target   the file to be replaced
+     * @param level    the compression level, or {@link DocumentFormat#UNCOMPRESSED}
+     * @param listener told about the progress of the save
+     */
+    static void save(DocumentFormat.Snapshot snapshot, Path target, int level, Listener listener) {
+        executor.execute(() -> {
+            try {
+                write(snapshot, target, level, listener);
+                SwingUtilities.invokeLater(listener::saved);
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> listener.failed(e));
+            } catch (RuntimeException | Error e) {
+                fail(listener, e);
+            }
+        });
+    }
+
+    /**
+     * Reports an unexpected failure of a save, such as running out of memory while compressing, which would
+     * otherwise be swallowed by the executor and leave the save pending forever
+     */
+    private static void fail(Listener listener, Throwable cause) {
+        cause.printStackTrace();
+        var e = new IOException("The file could not be written: " + cause, cause);
+        SwingUtilities.invokeLater(() -> listener.failed(e));
+    }
+
+    /**
+     * Waits until all the saves requested so far are complete
+     */
+    static void awaitSaves() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts writing the text of a snapshot to a plain text file
+     *
+     * @param snapshot the contents of the document, whose formatting is left out
+     * @param target   the file to be replaced
+     * @param listener told about the progress of the export
+     */
+    static void export(DocumentFormat.Snapshot snapshot, Path target, Listener listener) {
+        executor.execute(() -> {
+            try {
+                replace(target, channel -> snapshot.writeText(channel, progress(snapshot, listener)));
+                SwingUtilities.invokeLater(listener::saved);
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> listener.failed(e));
+            } catch (RuntimeException | Error e) {
+                fail(listener, e);
+            }
+        });
+    }
+
+    /**
+     * Starts writing a snapshot to a scratch file, which is written in place and not forced to the disk
+     *
+     * @param snapshot the contents of the document
+     * @param target   the file to be overwritten
+     * @param level    the compression level, or {@link DocumentFormat#UNCOMPRESSED}
+     * @return completed once the file has been written, or exceptionally with an {@link UncheckedIOException}
+     */
+    static CompletableFuture<Void> store(DocumentFormat.Snapshot snapshot, Path target, int level) {
+        return CompletableFuture.runAsync(() -> {
+            try (var channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                snapshot.write(channel, level, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static void write(DocumentFormat.Snapshot snapshot, Path target, int level, Listener listener)
+            throws IOException {
+        replace(target, channel -> snapshot.write(channel, level, progress(snapshot, listener)));
+    }
+
+    /**
+     * Returns a consumer of the number of chars written which reports the progress every now and then
+     */
+    private static IntConsumer progress(DocumentFormat.Snapshot snapshot, Listener listener) {
+        var length = Math.max(snapshot.getLength(), 1);
+        var lastReport = new long[]{System.currentTimeMillis()};
+        return written -> {
+            var now = System.currentTimeMillis();
+            if (now - lastReport[0] >= PROGRESS_INTERVAL) {
+                lastReport[0] = now;
+                var percent = (int) (written * 100L / length);
+                SwingUtilities.invokeLater(() -> listener.progress(percent));
+            }
+        };
+    }
+
+    /**
+     * Replaces the contents of a file in one step, through a temporary file forced to the disk and renamed
+     * over the target. Can be called on any thread.
+     *
+     * @param target   the file to be replaced
+     * @param contents writes the new contents of the file
+     * @throws IOException if the file cannot be written, it is then left unchanged
+     */
+    static void replace(Path target, Contents contents) throws IOException {
+        target = target.toAbsolutePath();
+        var directory = target.getParent();
+        var temporary = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+        try {
+            if (Files.exists(target)) {
+                // temporary files are only readable by their owner
+                try {
+                    Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException ignore) {
+                }
+            }
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                contents.write(channel);
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        forceDirectory(directory);
+    }
+
+    /**
+     * Forces the rename to the disk. Not every platform can open a directory, the rename is still
+     * atomic without this but may be lost if the system crashes soon after.
+     */
+    private static void forceDirectory(Path directory) {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.abhyudayasharma.texteditor.editor;
+
+/**
+ * Finds a literal string in a document using the Boyer-Moore-Horspool algorithm.
+ * The document is read through a {@link DocumentCharSequence}, so no copy of its text is made,
+ * and case-insensitive searches fold the case of each character as it is compared.
+ * Searches can start at any offset, in both directions.
+ */
+final class DocumentSearch implements TextSearch {
+    private static final int TABLE_SIZE = 256;
+
+    private final String pattern;
+    private final boolean caseSensitive;
+    private final char[] folded;
+    // shifts indexed by the low byte of a character, the smallest shift of the characters sharing a byte
+    private final int[] forwardShifts = new int[TABLE_SIZE];
+    private final int[] backwardShifts = new int[TABLE_SIZE];
+    private int matchEnd;
+
+    /**
+     * Prepares a search for a string
+     *
+     * @param pattern       the string to be found
+     * @param caseSensitive find text ignoring case if false
+     */
+    DocumentSearch(String pattern, boolean caseSensitive) {
+        this.pattern = pattern;
+        this.caseSensitive = caseSensitive;
+        folded = new char[pattern.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(pattern.charAt(i));
+        }
+
+        var m = folded.length;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            forwardShifts[i] = Math.max(m, 1);
+            backwardShifts[i] = Math.max(m, 1);
+        }
+        for (int i = 0; i < m - 1; i++) {
+            forwardShifts[folded[i] & 0xFF] = m - 1 - i;
+        }
+        for (int i = m - 1; i > 0; i--) {
+            backwardShifts[folded[i] & 0xFF] = i;
+        }
+    }
+
+    @Override
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    @Override
+    public boolean isRegularExpression() {
+        return false;
+    }
+
+    @Override
+    public int getMatchEnd() {
+        return matchEnd;
+    }
+
+    @Override
+    public String getReplacement(String replacement) {
+        return replacement;
+    }
+
+    /**
+     * Folds the case of a character the same way as {@link String#equalsIgnoreCase(String)}
+     */
+    private char fold(char c) {
+        return caseSensitive ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    @Override
+    public int findNext(CharSequence text, int from) {
+        var m = folded.length;
+        var limit = text.length() - m;
+        var i = Math.max(from, 0);
+        while (i <= limit) {
+            var j = m - 1;
+            while (j >= 0 && fold(text.charAt(i + j)) == folded[j]) {
+                j--;
+            }
+            if (j < 0) {
+                matchEnd = i + m;
+                return i;
+            }
+            i += forwardShifts[fold(text.charAt(i + m - 1)) & 0xFF];
+        }
+        return -1;
+    }
+
+    @Override
+    public int findPrevious(CharSequence text, int before) {
+        var m = folded.length;
+        var i = Math.min(before, text.length()) - m;
+        while (i >= 0) {
+            var j = 0;
+            while (j < m && fold(text.charAt(i + j)) == folded[j]) {
+                j++;
+            }
+            if (j == m) {
+                matchEnd = i + m;
+                return i;
+            }
+            i -= backwardShifts[fold(text.charAt(i)) & 0xFF];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,370 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the word and character counts of a {@link StylizedTextPane} up to date without re-reading the document.
+ * Every insertion or removal only re-tokenizes the edited range extended to the surrounding word boundaries,
+ * so that a word split or joined by the edit is counted correctly. Selection counts are updated from the
+ * caret by counting only the part of the selection which changed.
+ * Listeners are notified on the Event Dispatch Thread, at most once per batch of changes.
+ */
+final class DocumentStatistics implements DocumentListener, CaretListener {
+    static final String WORD_DELIMITERS = " ,.!?/\\()[]{};:\t\r\n";
+    private static final boolean[] DELIMITER_TABLE = new boolean[128];
+
+    static {
+        for (var c : WORD_DELIMITERS.toCharArray()) {
+            DELIMITER_TABLE[c] = true;
+        }
+    }
+
+    private final StylizedTextPane textPane;
+    private final ArrayList<Consumer<TextStatistics>> listeners = new ArrayList<>();
+    private final Segment segment = new Segment();
+    private Document document;
+
+    private int wordCount;
+    private int charCount;
+    private int pendingRemovalDelta;
+    private int preparedOffset;
+    private int preparedLength;
+    private boolean removalPrepared;
+
+    // the last selection for which selectedWordCount was computed
+    private int selectionStart;
+    private int selectionEnd;
+    private int selectedWordCount;
+    private boolean selectionValid;
+
+    private boolean notificationPending;
+
+    /**
+     * Starts tracking the statistics of the given text pane, including any document set on it later.
+     *
+     * @param textPane the text pane to be tracked
+     */
+    DocumentStatistics(StylizedTextPane textPane) {
+        this.textPane = textPane;
+        segment.setPartialReturn(true);
+        textPane.addCaretListener(this);
+        textPane.addPropertyChangeListener("document", e -> attach(textPane.getDocument()));
+        attach(textPane.getDocument());
+    }
+
+    /**
+     * Checks whether the character separates words
+     *
+     * @param c the character
+     * @return true if c is one of the {@link #WORD_DELIMITERS}
+     */
+    static boolean isDelimiter(char c) {
+        return c < DELIMITER_TABLE.length && DELIMITER_TABLE[c];
+    }
+
+    /**
+     * Counts the words between two offsets of a document, reading it through a {@link Segment}.
+     *
+     * @param document the document
+     * @param segment  a segment with partial return enabled to be reused for reading
+     * @param start    the start offset, inclusive
+     * @param end      the end offset, exclusive
+     * @return the number of words starting at or after start in the range
+     * @throws BadLocationException if the range is not inside the document
+     */
+    static int countWords(Document document, Segment segment, int start, int end) throws BadLocationException {
+        int words = 0;
+        boolean inWord = false;
+        int offset = start;
+        while (offset < end) {
+            document.getText(offset, end - offset, segment);
+            for (int i = segment.offset, limit = segment.offset + segment.count; i < limit; i++) {
+                var delimiter = isDelimiter(segment.array[i]);
+                if (!delimiter && !inWord) {
+                    words++;
+                }
+                inWord = !delimiter;
+            }
+            offset += segment.count;
+        }
+        return words;
+    }
+
+    /**
+     * Registers a listener which is called with the new statistics whenever they change.
+     *
+     * @param listener the listener
+     */
+    void addListener(Consumer<TextStatistics> listener) {
+        listeners.add(listener);
+        listener.accept(getStatistics());
+    }
+
+    /**
+     * Removes a listener registered by {@link #addListener(Consumer)}
+     *
+     * @param listener the listener
+     */
+    void removeListener(Consumer<TextStatistics> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the current statistics
+     *
+     * @return a snapshot of the counts
+     */
+    TextStatistics getStatistics() {
+        return new TextStatistics(wordCount, charCount, getSelectedWordCount(),
+                textPane.getSelectionEnd() - textPane.getSelectionStart());
+    }
+
+    int getWordCount() {
+        return wordCount;
+    }
+
+    int getCharCount() {
+        return charCount;
+    }
+
+    /**
+     * Returns the number of words in the current selection, updating the cached count if the selection moved.
+     *
+     * @return the number of selected words
+     */
+    int getSelectedWordCount() {
+        updateSelection(textPane.getSelectionStart(), textPane.getSelectionEnd());
+        return selectedWordCount;
+    }
+
+    /**
+     * Moves the listeners to a new document and counts it from scratch
+     *
+     * @param newDocument the document now shown in the text pane
+     */
+    private void attach(Document newDocument) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+            if (document instanceof AbstractDocument) {
+                ((AbstractDocument) document).setDocumentFilter(null);
+            }
+        }
+        document = newDocument;
+        document.addDocumentListener(this);
+        if (document instanceof AbstractDocument) {
+            ((AbstractDocument) document).setDocumentFilter(new RemovalFilter());
+        }
+        recount();
+    }
+
+    /**
+     * Counts the whole document, when a new document is attached or a removal was not prepared
+     */
+    private void recount() {
+        document.render(() -> {
+            try {
+                charCount = document.getLength();
+                wordCount = countWords(document, segment, 0, charCount);
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+        });
+        removalPrepared = false;
+        selectionValid = false;
+        scheduleNotification();
+    }
+
+    /**
+     * Computes the change in the word count caused by removing a range before it is removed,
+     * while the removed text can still be read. Called by the {@link DocumentFilter} of the document,
+     * and by the {@link EditHistory} for the removals made by undoing and redoing.
+     *
+     * @param offset the start of the range to be removed
+     * @param length the length of the range
+     */
+    void prepareRemoval(int offset, int length) {
+        try {
+            var start = wordStart(offset);
+            var end = wordEnd(offset + length);
+            var before = countWords(document, segment, start, end);
+            // the remaining parts of the edge words are joined into one
+            var after = start < offset || end > offset + length ? 1 : 0;
+            pendingRemovalDelta = after - before;
+            preparedOffset = offset;
+            preparedLength = length;
+            removalPrepared = true;
+        } catch (BadLocationException e) {
+            removalPrepared = false;
+        }
+    }
+
+    /**
+     * Finds the start of the word that contains the character before offset
+     *
+     * @param offset the offset
+     * @return offset if the preceding character is a delimiter, the start of the preceding word otherwise
+     * @throws BadLocationException if offset is not inside the document
+     */
+    private int wordStart(int offset) throws BadLocationException {
+        while (offset > 0 && !isDelimiter(charAt(offset - 1))) {
+            offset--;
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the end of the word that contains the character at offset
+     *
+     * @param offset the offset
+     * @return offset if the character is a delimiter, the end of the following word otherwise
+     * @throws BadLocationException if offset is not inside the document
+     */
+    private int wordEnd(int offset) throws BadLocationException {
+        var length = document.getLength();
+        while (offset < length && !isDelimiter(charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private char charAt(int offset) throws BadLocationException {
+        document.getText(offset, 1, segment);
+        return segment.array[segment.offset];
+    }
+
+    /**
+     * Whether the characters on both sides of offset belong to one word
+     */
+    private boolean joinsWord(int offset) throws BadLocationException {
+        return offset > 0 && offset < document.getLength()
+                && !isDelimiter(charAt(offset - 1)) && !isDelimiter(charAt(offset));
+    }
+
+    /**
+     * Updates the selected word count for a new selection. If one end of the selection is unchanged,
+     * only the range between the old and the new position of the other end is counted.
+     *
+     * @param start the selection start
+     * @param end   the selection end
+     */
+    private void updateSelection(int start, int end) {
+        if (selectionValid && start == selectionStart && end == selectionEnd) {
+            return;
+        }
+        try {
+            if (start == end) {
+                selectedWordCount = 0;
+            } else if (start == 0 && end == charCount) {
+                selectedWordCount = wordCount;
+            } else if (selectionValid && selectionStart != selectionEnd && start == selectionStart) {
+                var low = Math.min(end, selectionEnd);
+                var high = Math.max(end, selectionEnd);
+                var delta = countWords(document, segment, low, high) - (low > start && joinsWord(low) ? 1 : 0);
+                selectedWordCount += end > selectionEnd ? delta : -delta;
+            } else if (selectionValid && selectionStart != selectionEnd && end == selectionEnd) {
+                var low = Math.min(start, selectionStart);
+                var high = Math.max(start, selectionStart);
+                var delta = countWords(document, segment, low, high) - (high < end && joinsWord(high) ? 1 : 0);
+                selectedWordCount += start < selectionStart ? delta : -delta;
+            } else {
+                selectedWordCount = countWords(document, segment, start, end);
+            }
+            selectionStart = start;
+            selectionEnd = end;
+            selectionValid = true;
+        } catch (BadLocationException e) {
+            selectedWordCount = 0;
+            selectionValid = false;
+        }
+    }
+
+    /**
+     * Notifies the listeners once all the currently queued events have been processed
+     */
+    private void scheduleNotification() {
+        if (notificationPending) {
+            return;
+        }
+        notificationPending = true;
+        SwingUtilities.invokeLater(() -> {
+            notificationPending = false;
+            if (!listeners.isEmpty()) {
+                var statistics = getStatistics();
+                for (var listener : new ArrayList<>(listeners)) {
+                    listener.accept(statistics);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        var offset = e.getOffset();
+        var length = e.getLength();
+        try {
+            var start = wordStart(offset);
+            var end = wordEnd(offset + length);
+            // the edge words were a single word before the insertion
+            var before = start < offset || end > offset + length ? 1 : 0;
+            wordCount += countWords(document, segment, start, end) - before;
+            charCount = document.getLength();
+            selectionValid = false;
+            scheduleNotification();
+        } catch (BadLocationException ex) {
+            recount();
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        if (!removalPrepared || e.getOffset() != preparedOffset || e.getLength() != preparedLength) {
+            recount();
+            return;
+        }
+        removalPrepared = false;
+        wordCount += pendingRemovalDelta;
+        charCount = document.getLength();
+        selectionValid = false;
+        scheduleNotification();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // attribute changes do not affect the counts
+    }
+
+    @Override
+    public void caretUpdate(CaretEvent e) {
+        scheduleNotification();
+    }
+
+    /**
+     * Inspects the text about to be removed from the document, which is no longer available
+     * once the {@link DocumentListener} is notified.
+     */
+    private class RemovalFilter extends DocumentFilter {
+        @Override
+        public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+            if (length > 0) {
+                prepareRemoval(offset, length);
+            }
+            fb.remove(offset, length);
+        }
+
+        @Override
+        public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+                throws BadLocationException {
+            if (length > 0) {
+                prepareRemoval(offset, length);
+            }
+            fb.replace(offset, length, text, attrs);
+        }
+    }
+}
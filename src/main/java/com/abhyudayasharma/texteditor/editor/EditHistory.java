@@ -0,0 +1,386 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayList;
+
+/**
+ * The undo and redo history of the document of a {@link StylizedTextPane}, including any document set on it later.
+ * <p>
+ * Consecutive edits of the same kind which continue each other are merged into one step: typing a character at
+ * the end of the text just typed, deleting a character next to the characters just deleted, and changing the
+ * attributes of a range next to the range just changed, as long as they come within {@link #COALESCE_MILLIS} of each other and no step was
+ * undone in between. The groups of changes made by {@link StylizedDocument#beginCompoundEdit()}, like a paste
+ * or a replacement, are always steps of their own.
+ * <p>
+ * The memory held by each step is estimated from its {@link DocumentEvent}s: the removed or inserted text, which
+ * the content keeps for undoing or redoing, the elements replaced and the runs whose attributes changed. When the
+ * history grows beyond its memory budget, the oldest steps are dropped. The latest step is always kept.
+ * <p>
+ * Undoing and redoing bypass the {@link javax.swing.text.DocumentFilter} of the document, so the
+ * {@link RemovalListener} is told about the text they are about to remove instead.
+ */
+final class EditHistory extends UndoManager implements DocumentListener {
+    /**
+     * The default memory budget, in bytes
+     */
+    static final long DEFAULT_MEMORY_BUDGET = 32L << 20;
+
+    /**
+     * The longest pause between two edits which are merged into one step, in milliseconds
+     */
+    static final long COALESCE_MILLIS = 1000;
+
+    private static final int MAX_STEPS = 10_000;
+
+    // estimated sizes in bytes of the objects kept by an edit
+    private static final int EDIT_SIZE = 160;
+    private static final int ELEMENT_SIZE = 64;
+    private static final int RUN_CHANGE_SIZE = 96;
+
+    private Document document;
+    private long memoryBudget;
+    private long pendingSize;
+    private RemovalListener removalListener = null;
+
+    /**
+     * Told about the text an undo or a redo is about to remove, while it can still be read
+     */
+    interface RemovalListener {
+        /**
+         * Called before a range of the document is removed
+         *
+         * @param offset the start of the range
+         * @param length the length of the range
+         */
+        void removing(int offset, int length);
+    }
+
+    /**
+     * Starts recording the edits of the documents of a text pane
+     *
+     * @param textPane     the text pane
+     * @param memoryBudget the estimated memory the history may use, in bytes
+     */
+    EditHistory(StylizedTextPane textPane, long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        setLimit(MAX_STEPS);
+        textPane.addPropertyChangeListener("document", e -> attach(textPane.getDocument()));
+        attach(textPane.getDocument());
+    }
+
+    private void attach(Document newDocument) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+            document.removeUndoableEditListener(this);
+        }
+        discardAllEdits();
+        pendingSize = 0;
+        document = newDocument;
+        document.addDocumentListener(this);
+        document.addUndoableEditListener(this);
+    }
+
+    /**
+     * Sets the listener told about the text undoing and redoing remove
+     *
+     * @param listener the listener, or null
+     */
+    void setRemovalListener(RemovalListener listener) {
+        removalListener = listener;
+    }
+
+    /**
+     * Returns the memory budget
+     *
+     * @return the estimated memory the history may use, in bytes
+     */
+    synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Changes the memory budget, dropping the oldest steps if they do not fit any more
+     *
+     * @param memoryBudget the estimated memory the history may use, in bytes
+     */
+    synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        trimToBudget();
+    }
+
+    /**
+     * Returns the estimated memory used by the history
+     *
+     * @return the estimated size of all the steps, in bytes
+     */
+    synchronized long getMemoryUsage() {
+        var usage = 0L;
+        for (var edit : edits) {
+            usage += ((Step) edit).size;
+        }
+        return usage;
+    }
+
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+        var step = new Step(e.getEdit(), pendingSize, System.currentTimeMillis());
+        pendingSize = 0;
+        addEdit(step);
+    }
+
+    @Override
+    public synchronized boolean addEdit(UndoableEdit anEdit) {
+        var added = super.addEdit(anEdit);
+        trimToBudget();
+        return added;
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        try {
+            super.undo();
+        } finally {
+            pendingSize = 0;
+        }
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        try {
+            super.redo();
+        } finally {
+            pendingSize = 0;
+        }
+    }
+
+    /**
+     * Drops the oldest steps until the history fits in the budget, keeping the latest one
+     */
+    private void trimToBudget() {
+        var usage = getMemoryUsage();
+        var count = 0;
+        while (count < edits.size() - 1 && usage > memoryBudget) {
+            usage -= ((Step) edits.get(count)).size;
+            count++;
+        }
+        if (count > 0) {
+            trimEdits(0, count - 1);
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        pendingSize += EDIT_SIZE + 2L * e.getLength() + elementsChanged(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        pendingSize += EDIT_SIZE + 2L * e.getLength() + elementsChanged(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // one attribute edit is kept for each run in the range
+        var runs = 0L;
+        var end = e.getOffset() + e.getLength();
+        var root = e.getDocument().getDefaultRootElement();
+        for (int p = root.getElementIndex(e.getOffset()); p < root.getElementCount(); p++) {
+            var paragraph = root.getElement(p);
+            if (paragraph.getStartOffset() >= end) {
+                break;
+            }
+            var first = paragraph.getElementIndex(Math.max(e.getOffset(), paragraph.getStartOffset()));
+            var last = paragraph.getElementIndex(Math.min(end, paragraph.getEndOffset()) - 1);
+            runs += last - first + 1;
+        }
+        pendingSize += EDIT_SIZE + RUN_CHANGE_SIZE * runs + elementsChanged(e);
+    }
+
+    /**
+     * Estimates the memory of the elements an event keeps for undoing and redoing it, looking at the changes
+     * of the paragraphs and of the paragraphs at both ends of the event
+     */
+    private static long elementsChanged(DocumentEvent e) {
+        var root = e.getDocument().getDefaultRootElement();
+        var count = countChanged(e, root);
+        count += countChanged(e, root.getElement(root.getElementIndex(e.getOffset())));
+        if (e.getType() != DocumentEvent.EventType.REMOVE) {
+            count += countChanged(e, root.getElement(root.getElementIndex(e.getOffset() + e.getLength())));
+        }
+        return ELEMENT_SIZE * count;
+    }
+
+    private static long countChanged(DocumentEvent e, Element element) {
+        var change = e.getChange(element);
+        if (change == null) {
+            return 0;
+        }
+        return change.getChildrenAdded().length + change.getChildrenRemoved().length;
+    }
+
+    /**
+     * One step of the history, made of one or more edits of the document
+     */
+    private final class Step extends AbstractUndoableEdit {
+        private static final int OTHER = 0;
+        private static final int TYPING = 1;
+        private static final int DELETION = 2;
+        private static final int FORMATTING = 3;
+
+        private final ArrayList<UndoableEdit> edits = new ArrayList<>(1);
+        private final String name;
+        private final int kind;
+        // the range of the text typed, the offset of the text deleted or the range of the formatted text
+        private int start;
+        private int end;
+        private long time;
+        private long size;
+        private boolean closed;
+
+        Step(UndoableEdit edit, long size, long time) {
+            // the edits of a group are undone one by one, so that each removal can be told about
+            if (edit instanceof StylizedDocument.EditGroup) {
+                edits.addAll(((StylizedDocument.EditGroup) edit).getEdits());
+            } else {
+                edits.add(edit);
+            }
+            name = edit.getPresentationName();
+            this.size = size;
+            this.time = time;
+            var kind = OTHER;
+            if (edit instanceof DocumentEvent) {
+                var event = (DocumentEvent) edit;
+                var type = event.getType();
+                start = event.getOffset();
+                end = start + event.getLength();
+                if (type == DocumentEvent.EventType.INSERT && event.getLength() == 1) {
+                    kind = TYPING;
+                } else if (type == DocumentEvent.EventType.REMOVE && event.getLength() == 1) {
+                    kind = DELETION;
+                    end = start;
+                } else if (type == DocumentEvent.EventType.CHANGE) {
+                    kind = FORMATTING;
+                }
+            }
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean addEdit(UndoableEdit anEdit) {
+            if (!(anEdit instanceof Step)) {
+                return false;
+            }
+            var next = (Step) anEdit;
+            if (closed || kind == OTHER || next.kind != kind || next.time - time > COALESCE_MILLIS) {
+                return false;
+            }
+            switch (kind) {
+                case TYPING:
+                    // a line break ends the step
+                    if (next.start != end || isLineBreak(next)) {
+                        return false;
+                    }
+                    end = next.end;
+                    break;
+                case DELETION:
+                    // backspace removes the character before the step, delete removes the one at its offset
+                    if (next.start + 1 != start && next.start != start) {
+                        return false;
+                    }
+                    start = next.start;
+                    end = start;
+                    break;
+                default:
+                    if (next.start != end && next.end != start) {
+                        return false;
+                    }
+                    start = Math.min(start, next.start);
+                    end = Math.max(end, next.end);
+                    break;
+            }
+            edits.addAll(next.edits);
+            size += next.size;
+            time = next.time;
+            return true;
+        }
+
+        /**
+         * Checks whether a typing step which has just happened inserted a line break
+         */
+        private boolean isLineBreak(Step step) {
+            var event = (DocumentEvent) step.edits.get(0);
+            try {
+                return event.getDocument().getText(step.start, 1).charAt(0) == '\n';
+            } catch (BadLocationException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            closed = true;
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                var edit = edits.get(i);
+                announceRemoval(edit, DocumentEvent.EventType.INSERT);
+                edit.undo();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            for (var edit : edits) {
+                announceRemoval(edit, DocumentEvent.EventType.REMOVE);
+                edit.redo();
+            }
+        }
+
+        /**
+         * Tells the listener about the text an edit is about to remove
+         *
+         * @param type the type of the events which remove text when the edit is applied
+         */
+        private void announceRemoval(UndoableEdit edit, DocumentEvent.EventType type) {
+            if (removalListener == null || !(edit instanceof DocumentEvent)) {
+                return;
+            }
+            var event = (DocumentEvent) edit;
+            if (event.getType() == type && event.getLength() > 0) {
+                removalListener.removing(event.getOffset(), event.getLength());
+            }
+        }
+
+        @Override
+        public void die() {
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                edits.get(i).die();
+            }
+            super.die();
+        }
+
+        @Override
+        public String getPresentationName() {
+            switch (kind) {
+                case TYPING:
+                    return "Typing";
+                case DELETION:
+                    return "Deletion";
+                case FORMATTING:
+                    return "Formatting";
+                default:
+                    return name;
+            }
+        }
+    }
+}
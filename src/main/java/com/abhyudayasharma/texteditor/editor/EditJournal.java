@@ -0,0 +1,607 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyledDocument;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made to a document since it was last saved, kept next to its file,
+ * from which the changes can be recovered if the editor dies before they are saved.
+ * <p>
+ * Every insertion, removal and change of character attributes is encoded as a small record by the document
+ * listener, while the change is being made. A background thread appends the records to the journal file in
+ * batches about once a second and forces each batch to the disk, so autosaving writes about as many bytes as
+ * the edits themselves, whatever the size of the document. Once the journal grows larger than the file it
+ * applies to, the document is written to a checkpoint file and the journal restarts from the checkpoint.
+ * Saving the document restarts the journal from the saved file.
+ * <p>
+ * A journal file starts with the magic bytes {@code STDJ}, a version byte, and the kind, size and modification
+ * time of the file it applies to, which is either the document or its checkpoint. The styles used by the
+ * records follow, then the records. Each record is framed by its length and a CRC-32 checksum, so a record
+ * torn by a crash is detected and recovery stops before it.
+ */
+final class EditJournal implements DocumentListener {
+    private static final byte[] MAGIC = {'S', 'T', 'D', 'J'};
+    private static final int VERSION = 1;
+
+    /**
+     * The time in milliseconds between two batches
+     */
+    private static final long COMMIT_INTERVAL = 1000;
+
+    /**
+     * The number of pending bytes which are written without waiting for the next batch
+     */
+    private static final int COMMIT_SIZE = 1 << 20;
+
+    /**
+     * The smallest size of the records after which a checkpoint is written
+     */
+    private static final long CHECKPOINT_SIZE = 1 << 23;
+
+    // the files a journal applies to
+    private static final int DOCUMENT_BASE = 0;
+    private static final int CHECKPOINT_BASE = 1;
+
+    // record types
+    private static final int STYLE = 0;
+    private static final int INSERT = 1;
+    private static final int REMOVE = 2;
+    private static final int ATTRIBUTES = 3;
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "Edit journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile StyledDocument document;
+    private final Path path;
+    private final Path journalPath;
+    private final Path checkpointPath;
+    private final ScheduledFuture<?> committer;
+    private volatile boolean discarded;
+
+    // the records not yet written, guarded by this
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DocumentFormat.Output output = new DocumentFormat.Output(Channels.newChannel(recordBytes));
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final IdentityHashMap<AttributeSet, Integer> styleOfRun = new IdentityHashMap<>();
+    private final HashMap<AttributeSet, Integer> styles = new HashMap<>();
+    private final ArrayList<byte[]> styleRecords = new ArrayList<>();
+    private int[] runLengths = new int[16];
+    private int[] runStyles = new int[16];
+    private int runCount;
+    // the number of bytes of records since the journal was created
+    private long position;
+
+    // only used on the journal thread
+    private FileChannel channel;
+    private long baseSize;
+    // the records in the file, from fileStart to committed, start at dataOffset in the file
+    private long fileStart;
+    private long committed;
+    private long dataOffset;
+
+    /**
+     * Starts recording the changes of a document. Nothing is written until the journal is given the file it
+     * applies to by {@link #rebase(long)} or {@link #checkpoint()}.
+     *
+     * @param document the document
+     * @param path     the file of the document
+     */
+    EditJournal(StyledDocument document, Path path) {
+        this.document = document;
+        this.path = path.toAbsolutePath();
+        journalPath = journalPath(this.path);
+        checkpointPath = this.path.resolveSibling("." + this.path.getFileName() + ".checkpoint");
+        document.addDocumentListener(this);
+        committer = executor.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL, COMMIT_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private static Path journalPath(Path path) {
+        return path.resolveSibling("." + path.getFileName() + ".journal");
+    }
+
+    /**
+     * Returns the file of the document
+     *
+     * @return the absolute path of the file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the position in the journal of the current state of the document. The caller should hold a read
+     * lock on the document, so that the position matches what the caller sees.
+     *
+     * @return the position to be passed to {@link #rebase(long)}
+     */
+    synchronized long mark() {
+        return position;
+    }
+
+    /**
+     * Restarts the journal from the file of the document, after the document has been saved.
+     *
+     * @param mark the position of the saved state of the document, from {@link #mark()}
+     */
+    void rebase(long mark) {
+        executor.execute(() -> {
+            if (discarded) {
+                return;
+            }
+            try {
+                if (channel != null && mark < fileStart) {
+                    // a later checkpoint already holds the saved changes
+                    return;
+                }
+                rewrite(DOCUMENT_BASE, mark);
+                Files.deleteIfExists(checkpointPath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Moves the journal to another document holding the same text and attributes, such as the document of an
+     * {@link Editor} woken from hibernation. While the journal has no document, its records are still written,
+     * but no checkpoint is.
+     *
+     * @param newDocument the document whose changes are recorded from now on, or null
+     */
+    void setDocument(StyledDocument newDocument) {
+        var oldDocument = document;
+        if (oldDocument != null) {
+            oldDocument.removeDocumentListener(this);
+        }
+        document = newDocument;
+        if (newDocument != null && !discarded) {
+            newDocument.addDocumentListener(this);
+        }
+    }
+
+    /**
+     * Writes a checkpoint of the document and restarts the journal from it
+     */
+    void checkpoint() {
+        executor.execute(this::writeCheckpoint);
+    }
+
+    /**
+     * Stops recording the changes and deletes the journal and the checkpoint, waiting for the
+     * journal thread to let go of them.
+     */
+    void discard() {
+        discarded = true;
+        var document = this.document;
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        committer.cancel(false);
+        try {
+            executor.submit(() -> {
+                closeChannel();
+                Files.deleteIfExists(journalPath);
+                Files.deleteIfExists(checkpointPath);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // the listener is called under the write lock, so the records are in the order of the changes
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        var offset = e.getOffset();
+        var length = e.getLength();
+        try {
+            var text = document.getText(offset, length);
+            synchronized (this) {
+                collectRuns(offset, offset + length);
+                output.u8(INSERT);
+                output.varInt(offset);
+                output.string(text);
+                writeRuns();
+                append(false);
+            }
+        } catch (BadLocationException | IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        try {
+            synchronized (this) {
+                output.u8(REMOVE);
+                output.varInt(e.getOffset());
+                output.varInt(e.getLength());
+                append(false);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        var offset = e.getOffset();
+        try {
+            synchronized (this) {
+                collectRuns(offset, Math.min(offset + e.getLength(), document.getLength()));
+                output.u8(ATTRIBUTES);
+                output.varInt(offset);
+                writeRuns();
+                append(false);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the runs of a range of the document, merging adjacent runs with the same saved attributes
+     */
+    private void collectRuns(int start, int end) throws IOException {
+        runCount = 0;
+        var root = document.getDefaultRootElement();
+        for (int p = root.getElementIndex(start); p < root.getElementCount(); p++) {
+            var paragraph = root.getElement(p);
+            if (paragraph.getStartOffset() >= end) {
+                break;
+            }
+            for (int r = paragraph.getElementIndex(start); r < paragraph.getElementCount(); r++) {
+                var run = paragraph.getElement(r);
+                var runStart = Math.max(run.getStartOffset(), start);
+                var runEnd = Math.min(run.getEndOffset(), end);
+                if (runStart >= end) {
+                    break;
+                }
+                if (runEnd <= runStart) {
+                    continue;
+                }
+                var style = styleIndex(run.getAttributes().copyAttributes());
+                if (runCount > 0 && runStyles[runCount - 1] == style) {
+                    runLengths[runCount - 1] += runEnd - runStart;
+                } else {
+                    if (runCount == runLengths.length) {
+                        runLengths = Arrays.copyOf(runLengths, runCount * 2);
+                        runStyles = Arrays.copyOf(runStyles, runCount * 2);
+                    }
+                    runLengths[runCount] = runEnd - runStart;
+                    runStyles[runCount++] = style;
+                }
+            }
+        }
+    }
+
+    private void writeRuns() throws IOException {
+        output.varInt(runCount);
+        for (int i = 0; i < runCount; i++) {
+            output.varInt(runLengths[i]);
+            output.varInt(runStyles[i]);
+        }
+    }
+
+    /**
+     * Returns the index of a set of attributes, recording it first if it is new
+     */
+    private int styleIndex(AttributeSet attributes) throws IOException {
+        var style = styleOfRun.get(attributes);
+        if (style == null) {
+            var saved = DocumentFormat.savedAttributes(attributes);
+            style = styles.get(saved);
+            if (style == null) {
+                style = styles.size();
+                styles.put(saved, style);
+                output.u8(STYLE);
+                output.varInt(style);
+                DocumentFormat.writeAttributes(output, saved);
+                append(true);
+            }
+            styleOfRun.put(attributes, style);
+        }
+        return style;
+    }
+
+    /**
+     * Frames the record written to the output and adds it to the pending records
+     */
+    private void append(boolean style) throws IOException {
+        output.flush();
+        var payload = recordBytes.toByteArray();
+        recordBytes.reset();
+        var record = frame(payload);
+        if (style) {
+            styleRecords.add(record);
+        }
+        pending.write(record, 0, record.length);
+        position += record.length;
+        if (pending.size() >= COMMIT_SIZE && pending.size() - record.length < COMMIT_SIZE) {
+            executor.execute(this::commit);
+        }
+    }
+
+    private static byte[] frame(byte[] payload) {
+        var crc = new CRC32();
+        crc.update(payload);
+        var record = ByteBuffer.allocate(5 + payload.length + 4);
+        var length = payload.length;
+        while ((length & ~0x7F) != 0) {
+            record.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        record.put((byte) length);
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        return Arrays.copyOf(record.array(), record.position());
+    }
+
+    /**
+     * Appends the pending records to the journal file, on the journal thread
+     */
+    private void commit() {
+        if (discarded || channel == null) {
+            return; // the records are kept until the journal has a file to apply to
+        }
+        byte[] batch;
+        synchronized (this) {
+            if (pending.size() == 0) {
+                return;
+            }
+            batch = pending.toByteArray();
+            pending.reset();
+        }
+        try {
+            var buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            committed += batch.length;
+            if (committed - fileStart > Math.max(CHECKPOINT_SIZE, baseSize)) {
+                writeCheckpoint();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the document to the checkpoint file and restarts the journal from it, on the journal thread.
+     * The document cannot be changed while it is being copied.
+     */
+    private void writeCheckpoint() {
+        var document = this.document;
+        if (discarded || document == null) {
+            return;
+        }
+        var snapshot = new DocumentFormat.Snapshot[1];
+        var mark = new long[1];
+        document.render(() -> {
+            snapshot[0] = DocumentFormat.snapshot(document);
+            mark[0] = mark();
+        });
+        try {
+            DocumentSaver.replace(checkpointPath, checkpoint -> snapshot[0].write(checkpoint, null));
+            rewrite(CHECKPOINT_BASE, mark[0]);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replaces the journal file with one applying to a new base, keeping the styles and the records
+     * after a position, on the journal thread
+     */
+    private void rewrite(int newBaseKind, long mark) throws IOException {
+        byte[] batch;
+        ArrayList<byte[]> styleCopy;
+        long end;
+        synchronized (this) {
+            batch = pending.toByteArray();
+            pending.reset();
+            styleCopy = new ArrayList<>(styleRecords);
+            end = position;
+        }
+        var basePath = newBaseKind == DOCUMENT_BASE ? path : checkpointPath;
+        var base = Files.readAttributes(basePath, BasicFileAttributes.class);
+
+        var head = new ByteArrayOutputStream();
+        var headOutput = new DocumentFormat.Output(Channels.newChannel(head));
+        headOutput.bytes(MAGIC);
+        headOutput.u8(VERSION);
+        headOutput.u8(newBaseKind);
+        headOutput.varLong(base.size());
+        headOutput.varLong(base.lastModifiedTime().toMillis());
+        headOutput.flush();
+        for (var record : styleCopy) {
+            head.write(record, 0, record.length);
+        }
+
+        // the records after the mark are partly in the old file and partly in the batch
+        var oldChannel = channel;
+        var fileEnd = committed;
+        var oldDataOffset = dataOffset;
+        var oldFileStart = fileStart;
+        DocumentSaver.replace(journalPath, journal -> {
+            var headBuffer = ByteBuffer.wrap(head.toByteArray());
+            while (headBuffer.hasRemaining()) {
+                journal.write(headBuffer);
+            }
+            if (oldChannel != null && mark < fileEnd) {
+                var from = oldDataOffset + (mark - oldFileStart);
+                var count = fileEnd - mark;
+                for (long copied = 0; copied < count; ) {
+                    copied += oldChannel.transferTo(from + copied, count - copied, journal);
+                }
+            }
+            var skip = (int) Math.max(0, mark - fileEnd);
+            var tail = ByteBuffer.wrap(batch, skip, batch.length - skip);
+            while (tail.hasRemaining()) {
+                journal.write(tail);
+            }
+        });
+
+        closeChannel();
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        baseSize = base.size();
+        fileStart = mark;
+        committed = end;
+        dataOffset = head.size();
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Rebuilds a document from the journal left next to its file, if the editor died before the document
+     * was saved. Recovery stops at the first damaged record.
+     *
+     * @param path the file of the document
+     * @return the recovered document, or null if there is nothing to recover
+     * @throws IOException if the journal or the file it applies to cannot be read
+     */
+    static StylizedDocument recover(Path path) throws IOException {
+        path = path.toAbsolutePath();
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(journalPath(path));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        var journal = ByteBuffer.wrap(bytes);
+        var input = new DocumentFormat.Input(journal);
+        var magic = new byte[MAGIC.length];
+        StylizedDocument document;
+        int kind;
+        try {
+            input.bytes(magic);
+            if (!Arrays.equals(magic, MAGIC) || input.u8() != VERSION) {
+                return null;
+            }
+            kind = input.u8();
+            var size = input.varLong();
+            var modified = input.varLong();
+            var basePath = kind == DOCUMENT_BASE ? path
+                    : path.resolveSibling("." + path.getFileName() + ".checkpoint");
+            var base = Files.readAttributes(basePath, BasicFileAttributes.class);
+            if (base.size() != size || base.lastModifiedTime().toMillis() != modified) {
+                return null; // the file has changed since, the journal is stale
+            }
+            document = DocumentFormat.read(basePath);
+        } catch (IOException e) {
+            return null;
+        }
+
+        var styles = new ArrayList<AttributeSet>();
+        // the style records are written back after every save, only the changes tell that something was lost
+        var changes = 0;
+        journal.position((int) input.position());
+        try {
+            while (journal.hasRemaining()) {
+                var length = DocumentFormat.readVarInt(journal);
+                var payload = journal.slice();
+                payload.limit(length);
+                journal.position(journal.position() + length);
+                var crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != journal.getInt()) {
+                    break;
+                }
+                if (replay(document, new DocumentFormat.Input(payload), styles)) {
+                    changes++;
+                }
+            }
+        } catch (IOException | BadLocationException | BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException e) {
+            // a torn or damaged record, the changes before it are kept
+        }
+        // a checkpoint holds changes which were not saved by itself
+        return changes > 0 || kind == CHECKPOINT_BASE ? document : null;
+    }
+
+    /**
+     * Applies a record of the journal
+     *
+     * @return true if the record changed the document, false for a style record
+     */
+    private static boolean replay(StylizedDocument document, DocumentFormat.Input input,
+                                  ArrayList<AttributeSet> styles) throws IOException, BadLocationException {
+        var type = input.u8();
+        switch (type) {
+            case STYLE: {
+                var index = input.varInt();
+                while (styles.size() <= index) {
+                    styles.add(null);
+                }
+                styles.set(index, DocumentFormat.readAttributes(input));
+                return false;
+            }
+            case INSERT: {
+                var offset = input.varInt();
+                var text = input.string();
+                document.insertString(offset, text, null);
+                replayRuns(document, input, offset, styles);
+                return true;
+            }
+            case REMOVE: {
+                var offset = input.varInt();
+                document.remove(offset, input.varInt());
+                return true;
+            }
+            case ATTRIBUTES:
+                replayRuns(document, input, input.varInt(), styles);
+                return true;
+            default:
+                throw new IOException("Unknown record " + type);
+        }
+    }
+
+    private static void replayRuns(StylizedDocument document, DocumentFormat.Input input, int offset,
+                                   ArrayList<AttributeSet> styles) throws IOException {
+        for (int count = input.varInt(); count > 0; count--) {
+            var length = input.varInt();
+            var style = styles.get(input.varInt());
+            if (style == null) {
+                throw new IOException("Unknown style");
+            }
+            document.setCharacterAttributes(offset, length, style, true);
+            offset += length;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package com.abhyudayasharma.texteditor.editor;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.*;
 import java.awt.*;
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
-import java.util.function.Function;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.Deflater;
 
 /**
  * A text editor that uses {@link StyledDocument} for setting attributes to each character.
@@ -20,15 +27,27 @@ import java.util.function.Function;
 public class Editor extends JPanel {
     static final Font DEFAULT_FONT = new Font("Arial", Font.PLAIN, 14);
     private static final String FILE_EXTENSION = ".std";
-    private static final String WORD_DELIMITERS = " ,.!?/\\()[]{};:\t\r\n";
 
-    // Strings used as attribute names
-    private static final String BOLD = "bold";
-    private static final String ITALIC = "italic";
-    private static final String UNDERLINE = "underline";
-    private static final String FONT = "font";
+    // the compression choices offered when saving
+    private static final String[] COMPRESSION_NAMES = {"None", "Fastest", "Default", "Smallest"};
+    private static final int[] COMPRESSION_LEVELS = {DocumentFormat.UNCOMPRESSED, Deflater.BEST_SPEED,
+            DocumentFormat.DEFAULT_LEVEL, Deflater.BEST_COMPRESSION};
     private final StylizedTextPane textPane;
+    private final DocumentStatistics statistics;
+    private final EditHistory history;
+    private final MatchHighlighter matchHighlighter;
+    private final JScrollPane scrollPane;
+    private ChunkViewer chunkViewer = null;
+    private EditJournal journal = null;
     private String savedFilePath = null;
+    private String saveStatus = null;
+    private int compressionLevel = DocumentFormat.UNCOMPRESSED;
+    private TextSearch lastSearch = null;
+    private Hibernation hibernation = null;
+    // the saves which have not completed yet, whose document must stay in the editor
+    private int pendingSaves = 0;
+    // set by close(), after which the saves still completing must not start a journal
+    private boolean closed = false;
 
     /**
      * Creates a new {@link Editor} with a scrollable {@link StylizedTextPane}
@@ -42,14 +61,38 @@ public class Editor extends JPanel {
         var noWrapPanel = new JPanel(new BorderLayout());
         noWrapPanel.add(textPane);
         // scrollable interface
-        var scrollPane = new JScrollPane(noWrapPanel);
+        scrollPane = new JScrollPane(noWrapPanel);
 
-        // add the scrollPane
-        setLayout(new GridLayout(1, 1));
-        add(scrollPane);
+        // add the scrollPane, large files add their position bar next to it
+        setLayout(new BorderLayout());
+        add(scrollPane, BorderLayout.CENTER);
 
         // set default font
         textPane.setFont(DEFAULT_FONT);
+
+        statistics = new DocumentStatistics(textPane);
+        history = new EditHistory(textPane, EditHistory.DEFAULT_MEMORY_BUDGET);
+        history.setRemovalListener(statistics::prepareRemoval);
+        matchHighlighter = new MatchHighlighter(textPane);
+    }
+
+    /**
+     * Registers a listener which receives the word and character counts whenever
+     * the text or the selection changes. The listener is called immediately with the current counts.
+     *
+     * @param listener the listener, called on the Event Dispatch Thread
+     */
+    public void addStatisticsListener(Consumer<TextStatistics> listener) {
+        statistics.addListener(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addStatisticsListener(Consumer)}
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeStatisticsListener(Consumer<TextStatistics> listener) {
+        statistics.removeListener(listener);
     }
 
     /**
@@ -58,7 +101,7 @@ public class Editor extends JPanel {
      * @return the total number of words
      */
     public int wordCount() {
-        return new StringTokenizer(textPane.getText(), WORD_DELIMITERS).countTokens();
+        return statistics.getWordCount();
     }
 
     /**
@@ -67,8 +110,7 @@ public class Editor extends JPanel {
      * @return the number of words in the current selection
      */
     public int selectedWordCount() {
-        return textPane.getSelectionStart() == textPane.getSelectionEnd() ? 0 :
-                new StringTokenizer(textPane.getSelectedText(), WORD_DELIMITERS).countTokens();
+        return statistics.getSelectedWordCount();
     }
 
     /**
@@ -77,7 +119,7 @@ public class Editor extends JPanel {
      * @return the total number of characters
      */
     public int charCount() {
-        return textPane.getText().length();
+        return statistics.getCharCount();
     }
 
     /**
@@ -86,22 +128,31 @@ public class Editor extends JPanel {
      * @return the number of characters in the selection
      */
     public int selectedCharCount() {
-        var selectionStart = textPane.getSelectionStart();
-        var selectionEnd = textPane.getSelectionEnd();
-
-        return selectionEnd == selectionStart ? 0 : textPane.getText().substring(selectionStart, selectionEnd).length();
+        return textPane.getSelectionEnd() - textPane.getSelectionStart();
     }
 
     /**
-     * Opens up a dialog to select where to store the file.
+     * Opens up a dialog to select where to store the file and how much to compress it.
      */
     public void saveAs() {
+        if (isReadOnly()) return;
         var fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new FileNameExtensionFilter("Styled documents",
                 Editor.FILE_EXTENSION.substring(1))); // FileNameExtensionFilter doesn't want a '.'
+        var compressionBox = new JComboBox<>(COMPRESSION_NAMES);
+        for (int i = 0; i < COMPRESSION_LEVELS.length; i++) {
+            if (COMPRESSION_LEVELS[i] == compressionLevel) {
+                compressionBox.setSelectedIndex(i);
+            }
+        }
+        var compressionPanel = new JPanel(new BorderLayout());
+        compressionPanel.add(new JLabel("Compression:"), BorderLayout.NORTH);
+        compressionPanel.add(compressionBox, BorderLayout.CENTER);
+        fileChooser.setAccessory(compressionPanel);
         if (fileChooser.showSaveDialog(getTopLevelAncestor()) == JFileChooser.APPROVE_OPTION) {
             var file = fileChooser.getSelectedFile();
             if (file == null) return;
+            compressionLevel = COMPRESSION_LEVELS[compressionBox.getSelectedIndex()];
             // The file should have the extension applied if it doesn't already
             var path = file.getAbsolutePath();
             if (!path.endsWith(FILE_EXTENSION)) path += FILE_EXTENSION;
@@ -124,21 +175,94 @@ public class Editor extends JPanel {
             if (selection == JOptionPane.NO_OPTION) return;
         }
 
-        try (var oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(textPane.getStyledDocument());
-            JOptionPane.showMessageDialog(getTopLevelAncestor(), "File written successfully!",
-                    "Information", JOptionPane.INFORMATION_MESSAGE);
-            savedFilePath = filePath;
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(getTopLevelAncestor(), ex.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
+        // only copying the document holds the lock, it is written on a background thread
+        var document = textPane.getStylizedDocument();
+        var path = file.toPath().toAbsolutePath();
+        DocumentFormat.Snapshot snapshot;
+        EditJournal savedJournal;
+        long mark;
+        document.readLock();
+        try {
+            snapshot = DocumentFormat.snapshot(document);
+            // the journal of the target records the changes made while the file is written
+            savedJournal = journal != null && journal.getPath().equals(path) ? journal
+                    : new EditJournal(document, path);
+            mark = savedJournal.mark();
+        } finally {
+            document.readUnlock();
         }
+
+        var name = file.getName();
+        setSaveStatus("Saving " + name + "...");
+        pendingSaves++;
+        DocumentSaver.save(snapshot, file.toPath(), compressionLevel, new DocumentSaver.Listener() {
+            @Override
+            public void progress(int percent) {
+                setSaveStatus("Saving " + name + "... " + percent + "%");
+            }
+
+            @Override
+            public void saved() {
+                pendingSaves--;
+                setSaveStatus("Saved " + name);
+                if (closed || textPane.getDocument() != document) {
+                    // the editor has been closed or another file has been opened since
+                    if (savedJournal != journal) {
+                        savedJournal.discard();
+                    }
+                    return;
+                }
+                if (savedJournal != journal) {
+                    if (journal != null) {
+                        journal.discard();
+                    }
+                    journal = savedJournal;
+                }
+                journal.rebase(mark);
+                setSavedFilePath(filePath);
+            }
+
+            @Override
+            public void failed(IOException e) {
+                pendingSaves--;
+                if (savedJournal != journal) {
+                    savedJournal.discard();
+                }
+                if (!closed) {
+                    setSaveStatus("Could not save " + name);
+                }
+                // the file was not written even if its tab has been closed since
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), e.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    /**
+     * Returns the state of the last save, to be shown in a status bar.
+     *
+     * @return null if nothing has been saved yet, a short description of the save otherwise
+     */
+    public String getSaveStatus() {
+        return saveStatus;
+    }
+
+    /**
+     * Updates the save status and fires a "saveStatus" property change.
+     *
+     * @param status the new status
+     */
+    private void setSaveStatus(String status) {
+        var oldStatus = saveStatus;
+        saveStatus = status;
+        firePropertyChange("saveStatus", oldStatus, status);
     }
 
     /**
      * Save the current text stored in the textPane as a {@link StyledDocument}.
      */
     public void save() {
+        if (isReadOnly()) return;
         if (savedFilePath != null) {
             saveAs(savedFilePath, false);
         } else {
@@ -172,45 +296,413 @@ public class Editor extends JPanel {
      * @throws IOException when unable to open the file
      */
     private void open(File file) throws IOException {
-        if (textPane.getText().length() != 0) {
+        if (!confirmDiscard()) {
+            return;
+        }
+        var path = file.toPath();
+        StylizedDocument document = null;
+        var recovered = EditJournal.recover(path);
+        if (recovered != null) {
+            var response = JOptionPane.showConfirmDialog(getTopLevelAncestor(), "Changes to " + file.getName() +
+                            " which were not saved have been found. Do you want to recover them?", "Recover",
+                    JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (response == JOptionPane.YES_OPTION) {
+                document = recovered;
+            }
+        }
+        if (document == null) {
+            document = DocumentFormat.read(path);
+        }
+        // later saves keep the file compressed or not
+        compressionLevel = DocumentFormat.isCompressed(path)
+                ? DocumentFormat.DEFAULT_LEVEL : DocumentFormat.UNCOMPRESSED;
+        closeChunkViewer();
+        textPane.setStyledDocument(document);
+        setSavedFilePath(file.getAbsolutePath());
+
+        discardJournal();
+        journal = new EditJournal(document, path);
+        if (document == recovered) {
+            // the recovered changes are kept in a checkpoint until the document is saved
+            journal.checkpoint();
+        } else {
+            journal.rebase(journal.mark());
+        }
+    }
+
+    /**
+     * Opens up a dialog to select a plain text file to be imported into the editor
+     */
+    public void importText() {
+        var fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Text files", "txt"));
+        if (fileChooser.showOpenDialog(getTopLevelAncestor()) == JFileChooser.APPROVE_OPTION) {
+            try {
+                var file = fileChooser.getSelectedFile();
+                if (file == null) return;
+                importText(file);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), ex.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Replaces the text in the editor with the text of a plain text file. The imported text is not
+     * associated with a Styled Document File, so the next save asks where to save it.
+     *
+     * @param file the text file to be imported
+     * @throws IOException when unable to read the file
+     */
+    private void importText(File file) throws IOException {
+        if (!confirmDiscard()) {
+            return;
+        }
+        var replaced = new int[1];
+        var document = PlainTextFormat.read(file.toPath(), count -> replaced[0] = count);
+        closeChunkViewer();
+        textPane.setStyledDocument(document);
+        discardJournal();
+        setSavedFilePath(null);
+        if (replaced[0] > 0) {
+            JOptionPane.showMessageDialog(getTopLevelAncestor(), replaced[0]
+                            + " byte sequences of the file are not valid text and have been replaced with \uFFFD.",
+                    "TextEditor", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    /**
+     * Opens up a dialog to select where to export the text of the editor as a UTF-8 plain text file.
+     * The formatting is left out.
+     */
+    public void exportText() {
+        if (isReadOnly()) return;
+        var fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Text files", "txt"));
+        if (fileChooser.showSaveDialog(getTopLevelAncestor()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        var file = fileChooser.getSelectedFile();
+        if (file == null) return;
+        if (!file.getName().contains(".")) {
+            file = new File(file.getPath() + ".txt");
+        }
+        if (file.exists()) {
+            var selection = JOptionPane.showConfirmDialog(getTopLevelAncestor(), "File already exists. " +
+                    "Do you want to replace it?", "Replace?", JOptionPane.YES_NO_OPTION);
+            if (selection == JOptionPane.NO_OPTION) return;
+        }
+
+        var document = textPane.getStylizedDocument();
+        DocumentFormat.Snapshot snapshot;
+        document.readLock();
+        try {
+            snapshot = DocumentFormat.snapshot(document);
+        } finally {
+            document.readUnlock();
+        }
+        var name = file.getName();
+        setSaveStatus("Exporting " + name + "...");
+        DocumentSaver.export(snapshot, file.toPath(), new DocumentSaver.Listener() {
+            @Override
+            public void progress(int percent) {
+                setSaveStatus("Exporting " + name + "... " + percent + "%");
+            }
+
+            @Override
+            public void saved() {
+                setSaveStatus("Exported " + name);
+            }
+
+            @Override
+            public void failed(IOException e) {
+                setSaveStatus("Could not export " + name);
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), e.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    /**
+     * Stops journaling the changes of the current document, deleting its journal
+     */
+    private void discardJournal() {
+        if (journal != null) {
+            journal.discard();
+            journal = null;
+        }
+    }
+
+    /**
+     * Opens up a dialog to select a large {@link StyledDocument} file to be viewed without loading it whole
+     */
+    public void openLarge() {
+        var fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Styled documents",
+                Editor.FILE_EXTENSION.substring(1))); // FileNameExtensionFilter doesn't want a '.'
+        if (fileChooser.showOpenDialog(getTopLevelAncestor()) == JFileChooser.APPROVE_OPTION) {
+            try {
+                var file = fileChooser.getSelectedFile();
+                if (file == null) return;
+                openLarge(file);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), ex.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Opens a Styled Document Format file read-only. The file is memory-mapped and indexed in the background,
+     * and only the part of it around the visible text is loaded into the textPane.
+     *
+     * @param file the Styled Document File to be opened.
+     * @throws IOException when unable to open the file
+     */
+    private void openLarge(File file) throws IOException {
+        if (!confirmDiscard()) {
+            return;
+        }
+        view(ChunkSource.open(file.toPath()), file);
+    }
+
+    /**
+     * Opens up a dialog to select a plain text file to be viewed without loading it whole
+     */
+    public void openText() {
+        var fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(getTopLevelAncestor()) == JFileChooser.APPROVE_OPTION) {
+            try {
+                var file = fileChooser.getSelectedFile();
+                if (file == null) return;
+                openText(file);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), ex.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Opens a plain text file read-only, in the charset of its byte order mark or the one guessed from its
+     * first bytes, like {@link #importText(File)}. The file is memory-mapped and its lines are indexed in the background, and only the part of it around the visible
+     * text is decoded into the textPane.
+     *
+     * @param file the text file to be opened.
+     * @throws IOException when unable to open the file
+     */
+    private void openText(File file) throws IOException {
+        if (!confirmDiscard()) {
+            return;
+        }
+        view(PlainTextSource.open(file.toPath()), file);
+    }
+
+    /**
+     * Replaces the text in the editor with a read-only view of a large file
+     *
+     * @param source the chunks of the file
+     * @param file   the file
+     */
+    private void view(ChunkSource source, File file) {
+        closeChunkViewer();
+        discardJournal();
+        chunkViewer = new ChunkViewer(textPane, scrollPane, source);
+        add(chunkViewer.getPositionBar(), BorderLayout.EAST);
+        revalidate();
+        setSavedFilePath(file.getAbsolutePath());
+    }
+
+    /**
+     * Stops viewing a large file, leaving an empty editable document
+     */
+    private void closeChunkViewer() {
+        if (chunkViewer == null) {
+            return;
+        }
+        remove(chunkViewer.getPositionBar());
+        try {
+            chunkViewer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        chunkViewer = null;
+        textPane.setStyledDocument(new StylizedDocument());
+        revalidate();
+    }
+
+    /**
+     * Releases the document of the editor while it is not shown, keeping it in a compressed scratch file until
+     * {@link #wake()} is called. The caret, the selection and the scroll position are kept, the undo history
+     * is not. Nothing is done for a large file being viewed, which only holds a few chunks, an empty document,
+     * or a document being saved.
+     */
+    void hibernate() {
+        var document = textPane.getStylizedDocument();
+        if (hibernation != null || chunkViewer != null || pendingSaves > 0 || document.getLength() == 0) {
+            return;
+        }
+        Path file;
+        try {
+            file = Files.createTempFile("texteditor-", FILE_EXTENSION);
+        } catch (IOException e) {
+            // the document stays in memory
+            e.printStackTrace();
+            return;
+        }
+        file.toFile().deleteOnExit();
+
+        DocumentFormat.Snapshot snapshot;
+        document.readLock();
+        try {
+            snapshot = DocumentFormat.snapshot(document);
+        } finally {
+            document.readUnlock();
+        }
+        var state = new Hibernation(file, snapshot, textPane.getCaret().getMark(), textPane.getCaretPosition(),
+                scrollPane.getViewport().getViewPosition());
+        // the snapshot is only let go once it is on the disk, so it is never lost
+        state.written = DocumentSaver.store(snapshot, file, Deflater.BEST_SPEED)
+                .thenRun(() -> state.snapshot = null);
+        hibernation = state;
+        if (journal != null) {
+            // no checkpoint can be written until the same text is back
+            journal.setDocument(null);
+        }
+        textPane.setStyledDocument(new StylizedDocument());
+    }
+
+    /**
+     * Brings back the document released by {@link #hibernate()}, does nothing if the editor is not hibernating
+     */
+    void wake() {
+        var state = hibernation;
+        if (state == null) {
+            return;
+        }
+        hibernation = null;
+        StylizedDocument document = null;
+        String error = null;
+        var lost = false;
+        try {
+            state.written.join();
+            document = DocumentFormat.read(state.file);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            error = e.getMessage();
+        }
+        if (document == null) {
+            // the snapshot is still there if the file could not be written, not if it could not be read back
+            var snapshot = state.snapshot;
+            if (snapshot != null) {
+                document = snapshot.toDocument();
+            } else {
+                // the journal is left without a document, its edits do not apply to an empty one
+                lost = true;
+                document = new StylizedDocument();
+                var message = "The document of this tab could not be read back: " + error;
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(getTopLevelAncestor(), message,
+                        "Error", JOptionPane.ERROR_MESSAGE));
+            }
+        }
+        discardHibernationFile(state);
+
+        if (journal != null && !lost) {
+            journal.setDocument(document);
+        }
+        textPane.setStyledDocument(document);
+        textPane.setCaretPosition(Math.min(state.mark, document.getLength()));
+        textPane.moveCaretPosition(Math.min(state.dot, document.getLength()));
+        // the view is laid out again before it can be scrolled
+        SwingUtilities.invokeLater(() -> scrollPane.getViewport().setViewPosition(state.viewPosition));
+    }
+
+    /**
+     * Deletes the scratch file of a hibernation once it has been written
+     */
+    private static void discardHibernationFile(Hibernation state) {
+        state.written.handle((ignore, e) -> {
+            try {
+                Files.deleteIfExists(state.file);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The state of an editor whose document has been released
+     */
+    private static final class Hibernation {
+        private final Path file;
+        private final int mark;
+        private final int dot;
+        private final Point viewPosition;
+        private volatile DocumentFormat.Snapshot snapshot;
+        private CompletableFuture<Void> written;
+
+        private Hibernation(Path file, DocumentFormat.Snapshot snapshot, int mark, int dot, Point viewPosition) {
+            this.file = file;
+            this.snapshot = snapshot;
+            this.mark = mark;
+            this.dot = dot;
+            this.viewPosition = viewPosition;
+        }
+    }
+
+    /**
+     * Asks before the text in the editor is replaced. A large file being viewed has no changes to lose.
+     *
+     * @return true if the text may be replaced, false otherwise
+     */
+    private boolean confirmDiscard() {
+        if (chunkViewer == null && textPane.getDocument().getLength() != 0) {
             int response = JOptionPane.showOptionDialog(getTopLevelAncestor(), "You have data in you editor. " +
                             "You will lose it when you load a new file. Do you want to continue?", "Warning",
                     JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE,
                     null, null, JOptionPane.NO_OPTION);
-            if (response == JOptionPane.NO_OPTION) {
-                return;
-            }
+            return response != JOptionPane.NO_OPTION;
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            var document = (DefaultStyledDocument) ois.readObject();
-            textPane.setStyledDocument(document);
-            savedFilePath = file.getAbsolutePath();
-        } catch (ClassNotFoundException | IOException e) {
-            throw new IOException("Unsupported file format!");
+        return true;
+    }
+
+    /**
+     * Checks whether a large file is being viewed, telling the user that it cannot be changed if so.
+     *
+     * @return true if the text cannot be changed, false otherwise
+     */
+    private boolean isReadOnly() {
+        if (chunkViewer != null) {
+            JOptionPane.showMessageDialog(getTopLevelAncestor(), "Large files are opened read-only.",
+                    "TextEditor", JOptionPane.INFORMATION_MESSAGE);
+            return true;
         }
+        return false;
     }
 
     /**
      * Checks whether each element of the selection has the property applied.
      *
-     * @param propertyChecker a {@link Function} from {@link StyleConstants} like {@code StyleConstants::isBold}
+     * @param propertyChecker a {@link Predicate} from {@link StyleConstants} like {@code StyleConstants::isBold}
      * @return true if all chars in the selection return true for the {@code propertyChecker}, false otherwise.
      */
-    private boolean selectionHasAttribute(Function<AttributeSet, Boolean> propertyChecker) {
-        var selectionStart = textPane.getSelectionStart();
-        var selectionEnd = textPane.getSelectionEnd();
-        var document = textPane.getStyledDocument();
-
-        boolean hasProperty = selectionStart != selectionEnd;
-        for (int i = selectionStart; i < selectionEnd; i++) {
-            var element = document.getCharacterElement(i);
+    private boolean selectionHasAttribute(Predicate<AttributeSet> propertyChecker) {
+        return textPane.getStylizedDocument().rangeHasAttributes(textPane.getSelectionStart(),
+                textPane.getSelectionEnd(), propertyChecker).get(0);
+    }
 
-            if (!propertyChecker.apply(element.getAttributes())) {
-                hasProperty = false;
-                break;
-            }
-        }
-        return hasProperty;
+    /**
+     * Checks whether the selection is bold, italic and underlined in a single pass over its runs.
+     *
+     * @return the formatting shared by all the characters in the selection
+     */
+    public SelectionFormat getSelectionFormat() {
+        var format = textPane.getStylizedDocument().rangeHasAttributes(textPane.getSelectionStart(),
+                textPane.getSelectionEnd(), StyleConstants::isBold, StyleConstants::isItalic,
+                StyleConstants::isUnderline);
+        return new SelectionFormat(format.get(0), format.get(1), format.get(2));
     }
 
     /**
@@ -243,41 +735,98 @@ public class Editor extends JPanel {
     /**
      * Toggles an attribute on the selection. Toggle is based on the value of selectionAttributeChecker.
      *
-     * @param styleName                 the name for the attribute style
      * @param attributeSetter           {@link BiConsumer} used to set the attribute on the selection,
      *                                  for example, StyleConstants::setBold.
      * @param selectionAttributeChecker checks whether the attribute is currently applied. The value returned
      *                                  by this is used to toggle the attribute.
      */
-    private void toggleAttributeOnSelection(String styleName, BiConsumer<Style, Boolean> attributeSetter,
+    private void toggleAttributeOnSelection(BiConsumer<MutableAttributeSet, Boolean> attributeSetter,
                                             BooleanSupplier selectionAttributeChecker) {
-        Style style = textPane.addStyle(styleName, null);
-        attributeSetter.accept(style, !selectionAttributeChecker.getAsBoolean());
-        addAttribute(style);
+        var attributes = new SimpleAttributeSet();
+        attributeSetter.accept(attributes, !selectionAttributeChecker.getAsBoolean());
+        addAttribute(attributes);
     }
 
     /**
-     * Utility function to add a style to the selected text
+     * Utility function to add attributes to the selected text. The attributes are merged into the attributes
+     * of each run of equally formatted characters in the selection, one run at a time, and each run ends up
+     * with the set from the {@link AttributePool} equal to the result.
      *
-     * @param style the style to be added
+     * @param attributes the attributes to be added, replacing the current values of the same attributes
      */
-    private void addAttribute(Style style) {
+    private void addAttribute(AttributeSet attributes) {
         var selectionStart = textPane.getSelectionStart();
         var selectionEnd = textPane.getSelectionEnd();
-        var document = textPane.getStyledDocument();
-        for (var i = selectionStart; i < selectionEnd; i++) {
-            var oldAttributes = document.getCharacterElement(i).getAttributes();
-            var newAttributes = new SimpleAttributeSet(oldAttributes);
-            newAttributes.removeAttribute(style.getName()); // remove if it already exists
-            newAttributes.addAttributes(style);
-            document.setCharacterAttributes(i, 1, newAttributes, true);
+        textPane.getStylizedDocument().updateCharacterAttributes(selectionStart, selectionEnd - selectionStart,
+                oldAttributes -> {
+                    var newAttributes = new SimpleAttributeSet(oldAttributes);
+                    newAttributes.addAttributes(attributes);
+                    return newAttributes;
+                });
+    }
+
+    /**
+     * Shows how many attribute sets are used by the runs of the document and an estimate of their memory
+     */
+    public void showAttributeUsage() {
+        var usage = AttributePool.measure(textPane.getStyledDocument());
+        var message = String.format(Locale.ROOT, "Runs of formatted text: %,d%n"
+                        + "Attribute set objects: %,d%n"
+                        + "Distinct attribute combinations: %,d%n"
+                        + "Estimated memory of the sets: %,.1f KB",
+                usage.getRuns(), usage.getInstances(), usage.getCombinations(),
+                usage.getEstimatedBytes() / 1024.0);
+        JOptionPane.showMessageDialog(getTopLevelAncestor(), message, "Attribute Usage", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Shows the word, character, line and sentence counts of the document, and of the selection if there is one.
+     * For a large file being viewed, only the part shown is counted.
+     */
+    public void showStatistics() {
+        var document = textPane.getStylizedDocument();
+        var reports = new TextReport[2];
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            document.render(() -> {
+                try {
+                    reports[0] = TextReport.count(document, 0, document.getLength());
+                    var start = textPane.getSelectionStart();
+                    var end = textPane.getSelectionEnd();
+                    if (start != end) {
+                        reports[1] = TextReport.count(document, start, end);
+                    }
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            setCursor(Cursor.getDefaultCursor());
+        }
+        var message = describe(chunkViewer == null ? "Document" : "Shown part of the file", reports[0]);
+        if (reports[1] != null) {
+            message += String.format(Locale.ROOT, "%n") + describe("Selection", reports[1]);
         }
+        JOptionPane.showMessageDialog(getTopLevelAncestor(), message, "Document Statistics",
+                JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static String describe(String title, TextReport report) {
+        return String.format(Locale.ROOT, "%s%n"
+                        + "Words: %,d%n"
+                        + "Characters: %,d%n"
+                        + "Characters (no spaces): %,d%n"
+                        + "Lines: %,d%n"
+                        + "Sentences: %,d%n",
+                title, report.getWords(), report.getCharacters(), report.getNonWhitespaceCharacters(),
+                report.getLines(), report.getSentences());
     }
 
     /**
      * Wrapper for cut
      */
     public void cut() {
+        if (isReadOnly()) return;
         textPane.cut();
     }
 
@@ -292,9 +841,49 @@ public class Editor extends JPanel {
      * Wrapper for paste
      */
     public void paste() {
+        if (isReadOnly()) return;
         textPane.paste();
     }
 
+    /**
+     * Undoes the last step of the edit history, if any
+     */
+    public void undo() {
+        if (isReadOnly() || !history.canUndo()) return;
+        history.undo();
+    }
+
+    /**
+     * Redoes the last undone step of the edit history, if any
+     */
+    public void redo() {
+        if (isReadOnly() || !history.canRedo()) return;
+        history.redo();
+    }
+
+    /**
+     * @return true if there is a step to be undone, false while a large file is viewed
+     */
+    public boolean canUndo() {
+        return chunkViewer == null && history.canUndo();
+    }
+
+    /**
+     * @return true if there is an undone step to be redone, false while a large file is viewed
+     */
+    public boolean canRedo() {
+        return chunkViewer == null && history.canRedo();
+    }
+
+    /**
+     * Sets how much memory the edit history may use. The oldest steps are dropped when it uses more.
+     *
+     * @param bytes the estimated memory, in bytes
+     */
+    public void setUndoMemoryBudget(long bytes) {
+        history.setMemoryBudget(bytes);
+    }
+
     /**
      * Returns the path to the file saved.
      *
@@ -305,181 +894,376 @@ public class Editor extends JPanel {
     }
 
     /**
-     * Finds text in the textPane with a dialog for input
+     * Updates the saved file path and fires a "savedFilePath" property change.
+     *
+     * @param filePath the path of the file last written or opened
+     */
+    private void setSavedFilePath(String filePath) {
+        var oldPath = savedFilePath;
+        savedFilePath = filePath;
+        firePropertyChange("savedFilePath", oldPath, filePath);
+    }
+
+    /**
+     * Finds text in the textPane with a dialog for input.
+     * If "Highlight all" is checked, every match is highlighted while the text is being typed.
      */
     public void findText() {
-        var panel = new JPanel(new GridLayout(2, 2));
+        var panel = new JPanel(new GridLayout(3, 2));
         var textField = new JTextField(10);
         var checkBox = new JCheckBox("Match Case", true);
+        var searchUpCheck = new JCheckBox("Search up", false);
+        var regexCheck = new JCheckBox("Regular expression", false);
+        var highlightCheck = new JCheckBox("Highlight all", matchHighlighter.getSearch() != null);
         panel.add(new JLabel("Find what:"));
 
         panel.add(textField);
         panel.add(checkBox);
+        panel.add(searchUpCheck);
+        panel.add(regexCheck);
+        panel.add(highlightCheck);
+        if (lastSearch != null) {
+            textField.setText(lastSearch.getPattern());
+            checkBox.setSelected(lastSearch.isCaseSensitive());
+            regexCheck.setSelected(lastSearch.isRegularExpression());
+        }
+
+        // highlight the matches while the dialog is open
+        var previousHighlight = matchHighlighter.getSearch();
+        Runnable preview = () -> {
+            TextSearch search = null;
+            if (highlightCheck.isSelected()) {
+                try {
+                    search = TextSearch.create(textField.getText(), checkBox.isSelected(), regexCheck.isSelected());
+                } catch (PatternSyntaxException ignore) {
+                    // the expression is still being typed
+                }
+            }
+            matchHighlighter.highlight(search);
+        };
+        textField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                preview.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                preview.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        checkBox.addActionListener(e -> preview.run());
+        regexCheck.addActionListener(e -> preview.run());
+        highlightCheck.addActionListener(e -> preview.run());
         textField.requestFocus();
 
         var input = JOptionPane.showConfirmDialog(getTopLevelAncestor(), panel,
                 "Find", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
         if (input == JOptionPane.OK_OPTION) {
-            if (!findText(textField.getText(), checkBox.isSelected(), false)) {
-                JOptionPane.showMessageDialog(getTopLevelAncestor(), "Given text was not found in the editor.",
-                        "Text not found", JOptionPane.INFORMATION_MESSAGE);
+            var search = createSearch(textField.getText(), checkBox.isSelected(), regexCheck.isSelected());
+            if (search != null) {
+                lastSearch = search;
+                matchHighlighter.highlight(highlightCheck.isSelected() ? search : null);
+                findFromCaret(!searchUpCheck.isSelected());
+                return;
             }
         }
+        matchHighlighter.highlight(previousHighlight);
+    }
+
+    /**
+     * Creates a search, showing an error message if the regular expression is invalid
+     *
+     * @param pattern           the string or regular expression to be found
+     * @param caseSensitive     find text ignoring case if false
+     * @param regularExpression treat the pattern as a regular expression if true
+     * @return the search, or null if the pattern is invalid
+     */
+    private TextSearch createSearch(String pattern, boolean caseSensitive, boolean regularExpression) {
+        try {
+            return TextSearch.create(pattern, caseSensitive, regularExpression);
+        } catch (PatternSyntaxException e) {
+            JOptionPane.showMessageDialog(getTopLevelAncestor(), e.getMessage(),
+                    "Invalid regular expression", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
     }
 
     /**
-     * Finds text in the textPane
+     * Finds the next occurrence of the last searched text after the selection.
+     * Opens the find dialog if nothing has been searched yet.
+     */
+    public void findNext() {
+        if (lastSearch == null) {
+            findText();
+        } else {
+            findFromCaret(true);
+        }
+    }
+
+    /**
+     * Finds the previous occurrence of the last searched text before the selection.
+     * Opens the find dialog if nothing has been searched yet.
+     */
+    public void findPrevious() {
+        if (lastSearch == null) {
+            findText();
+        } else {
+            findFromCaret(false);
+        }
+    }
+
+    /**
+     * Selects the next or previous occurrence of {@code lastSearch} from the selection,
+     * wrapping around the document, and shows a message if there is none.
      *
-     * @param str           the string to be found
-     * @param caseSensitive find text ignoring case if false
-     * @param lastIndex     finds last index if true, first index otherwise
-     * @return true if the text was found, false otherwise.
+     * @param forward search towards the end of the document if true, towards the start otherwise
      */
-    private boolean findText(String str, boolean caseSensitive, boolean lastIndex) {
-        var data = textPane.getText();
+    private void findFromCaret(boolean forward) {
+        var search = lastSearch;
+        if (chunkViewer != null && !search.getPattern().isEmpty()) {
+            // the whole file is searched in the background, with a search of its own
+            chunkViewer.find(TextSearch.create(search.getPattern(), search.isCaseSensitive(),
+                    search.isRegularExpression()), forward, found -> {
+                if (!found) {
+                    showNotFound();
+                }
+            });
+            return;
+        }
+        var document = textPane.getDocument();
+        var selectionStart = textPane.getSelectionStart();
+        var selectionEnd = textPane.getSelectionEnd();
+        // the start and the end of the match
+        var match = new int[]{-1, -1};
 
-        // convert both to lowercase if not case-sensitive
-        if (!caseSensitive) {
-            data = data.toLowerCase(Locale.US);
-            str = str.toLowerCase(Locale.US);
+        if (!search.getPattern().isEmpty()) {
+            document.render(() -> {
+                var text = new DocumentCharSequence(document);
+                int index;
+                if (forward) {
+                    index = search.findNext(text, selectionEnd);
+                    if (index == selectionEnd && search.getMatchEnd() == index && selectionStart == selectionEnd) {
+                        // do not stay on an empty match at the caret
+                        index = search.findNext(text, selectionEnd + 1);
+                    }
+                    if (index < 0) {
+                        index = search.findNext(text, 0);
+                    }
+                } else {
+                    index = search.findPrevious(text, selectionStart);
+                    if (index == selectionStart && search.getMatchEnd() == index && selectionStart == selectionEnd) {
+                        index = search.findPrevious(text, selectionStart - 1);
+                    }
+                    if (index < 0) {
+                        index = search.findPrevious(text, document.getLength());
+                    }
+                }
+                if (index >= 0) {
+                    match[0] = index;
+                    match[1] = search.getMatchEnd();
+                }
+            });
         }
 
-        var index = lastIndex ? data.lastIndexOf(str) : data.indexOf(str);
-        if (index >= 0) {
-            textPane.setSelectionStart(index);
-            textPane.setSelectionEnd(index + str.length());
-            return true;
+        if (match[0] >= 0) {
+            textPane.setSelectionStart(match[0]);
+            textPane.setSelectionEnd(match[1]);
         } else {
-            return false;
+            showNotFound();
         }
     }
 
+    private void showNotFound() {
+        JOptionPane.showMessageDialog(getTopLevelAncestor(), "Given text was not found in the editor.",
+                "Text not found", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     /**
      * Replaces the text in the panel while respecting the initial formatting
      *
-     * @param from          the text to be replaced
-     * @param to            the replaced text
-     * @param caseSensitive replace text ignoring case if false
-     * @param replaceAll    whether to replace all occurrences or just the first
-     * @return true if replaced successfully, false if unable to replace
+     * @param search     the text to be replaced
+     * @param to         the replaced text, which may refer to groups if the search is a regular expression
+     * @param replaceAll whether to replace all occurrences or just the next one from the selection
+     * @return the number of occurrences replaced
+     * @throws IllegalArgumentException  if the replacement is invalid
+     * @throws IndexOutOfBoundsException if the replacement refers to a group which does not exist
      */
-    private boolean replaceText(String from, String to, boolean caseSensitive, boolean replaceAll) {
-        boolean flag;
-        boolean replaced = false;
-        do {
-            flag = replaceText(from, to, caseSensitive);
-            replaced = flag || replaced;
-        } while (flag && replaceAll);
+    private int replaceText(TextSearch search, String to, boolean replaceAll) {
+        if (search.getPattern().isEmpty()) {
+            return 0;
+        }
+        if (!replaceAll) {
+            if (replaceText(search, to, textPane.getSelectionStart()) || replaceText(search, to, 0)) {
+                return 1;
+            }
+            return 0;
+        }
+
+        // find all the occurrences in one pass, then replace them in one batch
+        var document = textPane.getStylizedDocument();
+        var starts = new int[16];
+        var ends = new int[16];
+        var replacements = new String[16];
+        var count = 0;
+        var shift = 0; // the change in length caused by the replacements before the last one
+        document.readLock();
+        try {
+            var text = new DocumentCharSequence(document);
+            for (int index = search.findNext(text, 0); index >= 0; ) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                    replacements = Arrays.copyOf(replacements, count * 2);
+                }
+                var end = search.getMatchEnd();
+                if (count > 0) {
+                    shift += replacements[count - 1].length() - (ends[count - 1] - starts[count - 1]);
+                }
+                starts[count] = index;
+                ends[count] = end;
+                replacements[count++] = search.getReplacement(to);
+                // step over empty matches so that they are not found again
+                index = search.findNext(text, end > index ? end : index + 1);
+            }
+        } finally {
+            document.readUnlock();
+        }
+        if (count == 0) {
+            return 0;
+        }
 
-        if (replaceAll) {
-            // If all occurrences have been replaced, highlight the last occurrence.
-            findText(to, true, true);
+        try {
+            document.replaceRanges(starts, ends, replacements, count);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return 0;
         }
-        return replaced;
+
+        // highlight the last replaced occurrence
+        var last = starts[count - 1] + shift;
+        textPane.setSelectionStart(last);
+        textPane.setSelectionEnd(last + replacements[count - 1].length());
+        return count;
     }
 
     /**
      * Converts the selected text to Uppercase.
      */
     public void selectionToUpperCase() {
-        var selectionStart = textPane.getSelectionStart();
-        var selectionEnd = textPane.getSelectionEnd();
-        var substring = textPane.getText().substring(selectionStart, selectionEnd);
-        var upperCaseSubstring = substring.toUpperCase(Locale.US);
-        replaceText(substring, upperCaseSubstring, true, selectionStart);
+        transformSelection(TextTransform.UPPER_CASE);
     }
 
     /**
      * Converts the selected text to Lowercase.
      */
     public void selectionToLowerCase() {
-        var selectionStart = textPane.getSelectionStart();
-        var selectionEnd = textPane.getSelectionEnd();
-        var substring = textPane.getText().substring(selectionStart, selectionEnd);
-        var lowerCaseSubstring = substring.toLowerCase(Locale.US);
-        replaceText(substring, lowerCaseSubstring, true, selectionStart);
+        transformSelection(TextTransform.LOWER_CASE);
     }
 
     /**
-     * Replaces the first occurrence of the text 'from' to the text 'to'
-     *
-     * @param from          the text to be replaced
-     * @param to            the replaced text
-     * @param caseSensitive replace text ignoring case if false
-     * @return true if able to replace, false otherwise.
+     * Capitalizes the first letter of each word in the selected text and converts the others to lowercase.
      */
-    private boolean replaceText(String from, String to, boolean caseSensitive) {
-        return replaceText(from, to, caseSensitive, 0);
+    public void selectionToTitleCase() {
+        transformSelection(TextTransform.TITLE_CASE);
     }
 
     /**
-     * Replaces the first occurrence of the text 'from' to the text 'to', starting the search from fromIndex
-     *
-     * @param from          the text to be replaced
-     * @param to            the replaced text
-     * @param caseSensitive replace text ignoring case if false
-     * @param fromIndex     the index from which to start the search
-     * @return true if able to replace, false otherwise.
+     * Swaps the case of every letter in the selected text.
      */
-    private boolean replaceText(String from, String to, boolean caseSensitive, int fromIndex) {
-        var data = textPane.getText();
-
-        if (!caseSensitive) {
-            data = data.toLowerCase(Locale.US);
-            from = from.toLowerCase(Locale.US);
-        }
-
-        var index = data.indexOf(from, fromIndex);
-        if (index >= 0) {
-            var list = new ArrayList<AttributeSet>(from.length());
-            var document = textPane.getStyledDocument();
-
-            for (int i = 0; i < from.length(); i++) {
-                list.add(document.getCharacterElement(i + index).getAttributes());
-            }
+    public void toggleSelectionCase() {
+        transformSelection(TextTransform.TOGGLE_CASE);
+    }
 
-            try {
-                document.remove(index, from.length());
-                document.insertString(index, to, null);
+    /**
+     * Converts the selected text to the Unicode normalization form C, composing characters with their accents.
+     */
+    public void normalizeSelection() {
+        transformSelection(TextTransform.NORMALIZE);
+    }
 
-                var size = list.size();
+    /**
+     * Transforms the characters of the selection in place, keeping their formatting, and selects the result.
+     *
+     * @param transform the transform
+     */
+    private void transformSelection(TextTransform transform) {
+        if (isReadOnly()) return;
+        var selectionStart = textPane.getSelectionStart();
+        var selectionEnd = textPane.getSelectionEnd();
+        if (selectionStart == selectionEnd) {
+            return;
+        }
+        try {
+            var length = textPane.getStylizedDocument().transformRange(selectionStart,
+                    selectionEnd - selectionStart, transform);
+            textPane.setSelectionStart(selectionStart);
+            textPane.setSelectionEnd(selectionStart + length);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
 
-                for (int i = 0; i < to.length(); i++) {
-                    if (i < size) {
-                        document.setCharacterAttributes(i + index, 1, list.get(i), true);
-                    } else {
-                        // Match the attributes of the last character.
-                        document.setCharacterAttributes(i + index, 1, list.get(size - 1), true);
-                    }
-                }
-            } catch (BadLocationException e) {
-                e.printStackTrace();
+    /**
+     * Replaces the first occurrence of a search with the text 'to', starting the search from fromIndex
+     *
+     * @param search    the text to be replaced
+     * @param to        the replaced text, which may refer to groups if the search is a regular expression
+     * @param fromIndex the index from which to start the search
+     * @return true if able to replace, false otherwise.
+     */
+    private boolean replaceText(TextSearch search, String to, int fromIndex) {
+        var document = textPane.getStylizedDocument();
+        var starts = new int[1];
+        var ends = new int[1];
+        var replacements = new String[1];
+        document.readLock();
+        try {
+            starts[0] = search.findNext(document, fromIndex);
+            if (starts[0] < 0) {
                 return false;
             }
-            findText(to, true, false);
-            return true;
-        } else {
+            ends[0] = search.getMatchEnd();
+            replacements[0] = search.getReplacement(to);
+        } finally {
+            document.readUnlock();
+        }
+
+        try {
+            document.replaceRanges(starts, ends, replacements, 1);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
             return false;
         }
+        textPane.setSelectionStart(starts[0]);
+        textPane.setSelectionEnd(starts[0] + replacements[0].length());
+        return true;
     }
 
     /**
      * Replaces the text in the textPane with a dialog for input
      */
     public void replaceText() {
+        if (isReadOnly()) return;
         var fromField = new JTextField(15);
         var toField = new JTextField(15);
         var replaceAllCheck = new JCheckBox("Replace All", false);
         var caseSensitiveCheck = new JCheckBox("Match case", true);
+        var regexCheck = new JCheckBox("Regular expression", false);
         var panel = new JPanel();
 
-        panel.setLayout(new GridLayout(3, 2));
+        panel.setLayout(new GridLayout(4, 2));
         panel.add(new JLabel("Find what:"));
         panel.add(fromField);
         panel.add(new JLabel("Replace with:"));
         panel.add(toField);
         panel.add(replaceAllCheck);
         panel.add(caseSensitiveCheck);
+        panel.add(regexCheck);
 
         fromField.requestFocus();
 
@@ -487,46 +1271,68 @@ public class Editor extends JPanel {
                 JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
 
         if (input == JOptionPane.OK_OPTION) {
-            if (!replaceText(fromField.getText(), toField.getText(), caseSensitiveCheck.isSelected(),
-                    replaceAllCheck.isSelected())) {
+            var search = createSearch(fromField.getText(), caseSensitiveCheck.isSelected(), regexCheck.isSelected());
+            if (search == null) {
+                return;
+            }
+            var replaceAll = replaceAllCheck.isSelected();
+            int count;
+            try {
+                count = replaceText(search, toField.getText(), replaceAll);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), e.getMessage(),
+                        "Invalid replacement", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (count == 0) {
                 JOptionPane.showMessageDialog(getTopLevelAncestor(), "The text was not found.",
                         "TextEditor", JOptionPane.INFORMATION_MESSAGE);
+            } else if (replaceAll) {
+                JOptionPane.showMessageDialog(getTopLevelAncestor(), count +
+                                (count == 1 ? " occurrence" : " occurrences") + " replaced.",
+                        "TextEditor", JOptionPane.INFORMATION_MESSAGE);
             }
         }
     }
 
     /**
-     * Utility for closing the editor while warning about
-     * unsaved changes.
-     *
-     * @return true if ready to quit, false otherwise.
+     * Lets go of the files of the editor before it is closed: the journal, the scratch file of a hibernating
+     * document and a large file being viewed. The changes which have not been saved are given up.
      */
-    public boolean confirmClose() {
-        var output = JOptionPane.showConfirmDialog(getTopLevelAncestor(),
-                "Do you want to exit? You may have unsaved changes.",
-                "Confirm exit", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
-        return output == JOptionPane.YES_OPTION;
+    void close() {
+        closed = true;
+        // let saves in progress finish first, the changes after them are given up
+        DocumentSaver.awaitSaves();
+        discardJournal();
+        if (hibernation != null) {
+            discardHibernationFile(hibernation);
+            hibernation = null;
+        }
+        closeChunkViewer();
     }
 
     /**
      * Toggles the BOLD attribute on the selected text
      */
     public void toggleBoldOnSelection() {
-        toggleAttributeOnSelection(BOLD, StyleConstants::setBold, this::isSelectionBold);
+        if (isReadOnly()) return;
+        toggleAttributeOnSelection(StyleConstants::setBold, this::isSelectionBold);
     }
 
     /**
      * Toggles ITALIC on selected text
      */
     public void toggleItalicsOnSelection() {
-        toggleAttributeOnSelection(ITALIC, StyleConstants::setItalic, this::isSelectionItalic);
+        if (isReadOnly()) return;
+        toggleAttributeOnSelection(StyleConstants::setItalic, this::isSelectionItalic);
     }
 
     /**
      * Toggles the UNDERLINE attribute on the selected text.
      */
     public void toggleUnderlineOnSelection() {
-        toggleAttributeOnSelection(UNDERLINE, StyleConstants::setUnderline, this::isSelectionUnderline);
+        if (isReadOnly()) return;
+        toggleAttributeOnSelection(StyleConstants::setUnderline, this::isSelectionUnderline);
     }
 
     /**
@@ -535,17 +1341,12 @@ public class Editor extends JPanel {
      * @param font the font to be set to the selected text.
      */
     public void setSelectionFont(final Font font) {
-        var style = textPane.addStyle(FONT, null);
-        StyleConstants.setFontFamily(style, font.getFamily());
-        StyleConstants.setFontSize(style, font.getSize());
-        addAttribute(style);
-
-        style = textPane.addStyle(BOLD, null);
-        StyleConstants.setBold(style, font.isBold());
-        addAttribute(style);
-
-        style = textPane.addStyle(ITALIC, null);
-        StyleConstants.setItalic(style, font.isItalic());
-        addAttribute(style);
+        if (isReadOnly()) return;
+        var attributes = new SimpleAttributeSet();
+        StyleConstants.setFontFamily(attributes, font.getFamily());
+        StyleConstants.setFontSize(attributes, font.getSize());
+        StyleConstants.setBold(attributes, font.isBold());
+        StyleConstants.setItalic(attributes, font.isItalic());
+        addAttribute(attributes);
     }
 }
@@ -0,0 +1,309 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A {@link ChunkSource} reading a document in the binary .std format from a memory-mapped file.
+ * <p>
+ * Only the header is read when the file is opened. A background thread then makes a first pass over the file,
+ * recording the offsets of every chunk of the text and of every few hundred attribute runs, so that any chunk
+ * can later be decoded from the mapped file together with its runs. The heap only holds these indices and
+ * the chunks which are loaded; the pages of the file are read by the operating system as they are touched.
+ * <p>
+ * In version 1 files the runs are only found after the whole text has been scanned,
+ * so no chunk can be loaded before the first pass is complete.
+ */
+final class MappedDocumentSource extends AbstractMappedSource {
+    /**
+     * The number of characters after which a chunk ends at the next line break
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of characters after which a chunk ends even without a line break
+     */
+    private static final int MAX_CHUNK_SIZE = CHUNK_SIZE * 4;
+
+    /**
+     * The number of runs between two entries of the run index
+     */
+    private static final int RUN_INDEX_STEP = 256;
+
+    private final DocumentFormat.Header header;
+
+    // guarded by this, with the chunk index
+    private long textEnd = -1;
+    private boolean textIndexed;
+
+    // the run index, guarded by this: the position of every RUN_INDEX_STEP-th run and its offset in the text
+    private long[] runIndexBytes = new long[64];
+    private int[] runIndexChars = new int[64];
+    private int runIndexCount;
+    private int runCount;
+    private boolean runsIndexed;
+
+    private MappedDocumentSource(FileChannel channel, DocumentFormat.Header header) throws IOException {
+        super(channel);
+        this.header = header;
+    }
+
+    /**
+     * Opens a document file and starts indexing it in the background
+     *
+     * @param path the file
+     * @return the source
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    static MappedDocumentSource open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var header = DocumentFormat.readHeader(channel);
+            var source = new MappedDocumentSource(channel, header);
+            var indexer = new Thread(source::index, "Index " + path.getFileName());
+            indexer.setDaemon(true);
+            indexer.start();
+            return source;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized int getChunkCount() {
+        if (!runsIndexed) {
+            return 0;
+        }
+        // the end of the last chunk found is only known once the next one starts
+        return textIndexed ? chunkStarts : Math.max(chunkStarts - 1, 0);
+    }
+
+    @Override
+    public synchronized boolean isComplete() {
+        return textIndexed && runsIndexed;
+    }
+
+    /**
+     * Builds the indices, finding the runs first if their position is known
+     */
+    private void index() {
+        try {
+            if (header.textBytes >= 0) {
+                indexRuns(header.textStart + header.textBytes);
+                indexText();
+            } else {
+                indexText();
+                indexRuns(textEnd);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                // keep what has been found
+                textIndexed = true;
+                runsIndexed = true;
+            }
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Scans the text, counting the characters of its UTF-8 encoding and recording where the chunks start
+     */
+    private void indexText() {
+        var position = header.textStart;
+        var chars = 0;
+        var chunkStart = 0;
+        var lastLead = position;
+        addChunk(position, 0);
+        var lastNotification = System.currentTimeMillis();
+        while (chars < header.textLength && position < fileSize && !closed) {
+            var region = region(position);
+            var regionStart = regionStart(position);
+            var limit = region.limit();
+            int i;
+            for (i = (int) (position - regionStart); i < limit && chars < header.textLength; i++) {
+                var b = region.get(i);
+                if ((b & 0xC0) != 0x80) {
+                    // a lead byte, four byte sequences are decoded to a surrogate pair
+                    chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+                    lastLead = regionStart + i;
+                }
+                if (chars - chunkStart >= CHUNK_SIZE && (b == '\n'
+                        || chars - chunkStart >= MAX_CHUNK_SIZE && startsCharacter(regionStart + i + 1))) {
+                    addChunk(regionStart + i + 1, chars);
+                    chunkStart = chars;
+                }
+            }
+            position = regionStart + i;
+            var now = System.currentTimeMillis();
+            if (now - lastNotification >= NOTIFY_INTERVAL) {
+                lastNotification = now;
+                notifyListeners();
+            }
+        }
+        if (header.textBytes >= 0) {
+            position = header.textStart + header.textBytes;
+        } else if (chars >= header.textLength && position > header.textStart) {
+            // the count reaches the length at the lead byte of the last character, its other bytes follow.
+            // The runs come right after the text, so their first byte may look like a continuation byte.
+            position = Math.min(lastLead + sequenceLength(get(lastLead)), fileSize);
+        }
+        synchronized (this) {
+            textEnd = position;
+            textIndexed = true;
+            if (chunkChars[chunkStarts - 1] == chars && chunkStarts > 1) {
+                // the text ended right after a chunk boundary
+                chunkStarts--;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the UTF-8 sequence starting with a lead byte
+     */
+    private static int sequenceLength(byte lead) {
+        if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        }
+        if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        }
+        return (lead & 0xF8) == 0xF0 ? 4 : 1;
+    }
+
+    /**
+     * Reads all the runs once, recording the position of every {@link #RUN_INDEX_STEP}-th run
+     */
+    private void indexRuns(long start) throws IOException {
+        var cursor = new long[]{start};
+        var count = varInt(cursor);
+        var chars = 0;
+        for (int i = 0; i < count && !closed; i++) {
+            if (i % RUN_INDEX_STEP == 0) {
+                addRunIndex(cursor[0], chars);
+            }
+            chars += varInt(cursor);
+            varInt(cursor);
+        }
+        synchronized (this) {
+            runCount = count;
+            runsIndexed = true;
+        }
+        notifyListeners();
+    }
+
+    private synchronized void addRunIndex(long position, int chars) {
+        if (runIndexCount == runIndexBytes.length) {
+            runIndexBytes = Arrays.copyOf(runIndexBytes, runIndexCount * 2);
+            runIndexChars = Arrays.copyOf(runIndexChars, runIndexCount * 2);
+        }
+        runIndexBytes[runIndexCount] = position;
+        runIndexChars[runIndexCount++] = chars;
+    }
+
+    /**
+     * Reads a variable-length integer at the position held in cursor[0], and moves the cursor past it
+     */
+    private int varInt(long[] cursor) throws IOException {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (cursor[0] >= fileSize) {
+                throw new IOException("Unexpected end of file");
+            }
+            var b = get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt file: invalid number");
+    }
+
+    @Override
+    public TextChunk loadChunk(int index) throws IOException {
+        long byteStart;
+        long byteEnd;
+        int charStart;
+        int charEnd;
+        int indexEntry;
+        long runPosition;
+        int runChars;
+        int runs;
+        synchronized (this) {
+            if (index < 0 || index >= getChunkCount()) {
+                throw new IndexOutOfBoundsException("Chunk " + index + " has not been found");
+            }
+            byteStart = chunkBytes[index];
+            charStart = (int) chunkChars[index];
+            var last = index + 1 == chunkStarts;
+            byteEnd = last ? textEnd : chunkBytes[index + 1];
+            charEnd = last ? header.textLength : (int) chunkChars[index + 1];
+
+            // the last indexed run starting at or before the chunk
+            var low = 0;
+            var high = runIndexCount - 1;
+            while (low < high) {
+                var middle = (low + high + 1) >>> 1;
+                if (runIndexChars[middle] <= charStart) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            indexEntry = low;
+            runPosition = runIndexCount > 0 ? runIndexBytes[low] : 0;
+            runChars = runIndexCount > 0 ? runIndexChars[low] : 0;
+            runs = runCount;
+        }
+
+        var decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var decoded = decoder.decode(slice(byteStart, byteEnd));
+        var text = new char[decoded.remaining()];
+        decoded.get(text);
+
+        var runLengths = new int[16];
+        var runAttributes = new AttributeSet[16];
+        var count = 0;
+        var covered = 0;
+        var cursor = new long[]{runPosition};
+        for (int run = indexEntry * RUN_INDEX_STEP; run < runs && runChars < charEnd; run++) {
+            var runEnd = runChars + varInt(cursor);
+            var style = varInt(cursor);
+            if (style >= header.styles.length) {
+                throw new IOException("Corrupt file: unknown style " + style);
+            }
+            var start = Math.max(runChars, charStart) - charStart;
+            var end = Math.min(Math.min(runEnd, charEnd) - charStart, text.length);
+            if (end > start) {
+                if (count == runLengths.length) {
+                    runLengths = Arrays.copyOf(runLengths, count * 2);
+                    runAttributes = Arrays.copyOf(runAttributes, count * 2);
+                }
+                runLengths[count] = end - start;
+                runAttributes[count++] = header.styles[style];
+                covered = end;
+            }
+            runChars = runEnd;
+        }
+        if (covered < text.length) {
+            // the runs of a damaged file do not cover the whole text
+            runLengths = Arrays.copyOf(runLengths, count + 1);
+            runAttributes = Arrays.copyOf(runAttributes, count + 1);
+            runLengths[count] = text.length - covered;
+            runAttributes[count++] = SimpleAttributeSet.EMPTY;
+        }
+        return new TextChunk(index, charStart, text, runLengths, runAttributes, count);
+    }
+}
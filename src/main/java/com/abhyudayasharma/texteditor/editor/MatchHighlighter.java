@@ -0,0 +1,379 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Highlights every match of a {@link TextSearch} in a text component.
+ * The document is scanned on a background thread, against a snapshot of its text copied a slice at a time
+ * under short read locks, so the Event Dispatch Thread is never blocked for long even on very large documents.
+ * Matches are sent back to the Event Dispatch Thread in batches and painted as they arrive.
+ * <p>
+ * Any change of the search or the text cancels the running scan and clears the highlights, and a new scan is
+ * started once the text has not changed for a short while. Because a change cancels the scan before any reader
+ * can see the changed text, all the matches of a scan come from one consistent version of the document.
+ */
+final class MatchHighlighter implements DocumentListener {
+    /**
+     * The number of characters copied under each read lock
+     */
+    private static final int SLICE_SIZE = 1 << 16;
+
+    /**
+     * The number of matches sent to the Event Dispatch Thread at once
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * The longest time in milliseconds that found matches wait before being sent
+     */
+    private static final long BATCH_DELAY = 100;
+
+    /**
+     * The delay in milliseconds after the last change of the text before it is scanned again
+     */
+    private static final int RESCAN_DELAY = 300;
+
+    private static final Color HIGHLIGHT_COLOR = new Color(255, 200, 0, 96);
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "Highlight matches");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final JTextComponent textComponent;
+    private final MatchPainter painter = new MatchPainter();
+    private final Timer rescanTimer;
+    private Document document;
+    private TextSearch search;
+    private Scan scan;
+    private Future<?> future;
+    private Object highlight;
+
+    // the matches painted so far, in increasing order
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int count;
+
+    /**
+     * Prepares highlighting for a text component, including any document set on it later
+     *
+     * @param textComponent the text component
+     */
+    MatchHighlighter(JTextComponent textComponent) {
+        this.textComponent = textComponent;
+        rescanTimer = new Timer(RESCAN_DELAY, e -> start());
+        rescanTimer.setRepeats(false);
+        textComponent.addPropertyChangeListener("document", e -> attach(textComponent.getDocument()));
+        attach(textComponent.getDocument());
+    }
+
+    /**
+     * Highlights all the matches of a search, replacing the current highlights.
+     *
+     * @param search the search, or null to remove the highlights
+     */
+    void highlight(TextSearch search) {
+        this.search = search == null || search.getPattern().isEmpty() ? null : search;
+        rescanTimer.stop();
+        start();
+    }
+
+    /**
+     * Returns the search being highlighted
+     *
+     * @return the search, or null if nothing is highlighted
+     */
+    TextSearch getSearch() {
+        return search;
+    }
+
+    /**
+     * Returns the number of matches found so far
+     *
+     * @return the number of highlighted matches
+     */
+    int getMatchCount() {
+        return count;
+    }
+
+    private void attach(Document newDocument) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = newDocument;
+        document.addDocumentListener(this);
+        rescanTimer.stop();
+        start();
+    }
+
+    /**
+     * Cancels the running scan and removes the highlights
+     */
+    private void cancel() {
+        if (scan != null) {
+            scan.cancelled = true;
+            future.cancel(false);
+            scan = null;
+            future = null;
+        }
+        if (highlight != null) {
+            textComponent.getHighlighter().removeHighlight(highlight);
+            highlight = null;
+        }
+        if (count > 0) {
+            count = 0;
+            textComponent.repaint();
+        }
+    }
+
+    /**
+     * Starts scanning the current document for the search
+     */
+    private void start() {
+        cancel();
+        if (search == null) {
+            return;
+        }
+        // each scan uses its own instance, searches remember their last match
+        scan = new Scan(document, TextSearch.create(search.getPattern(), search.isCaseSensitive(),
+                search.isRegularExpression()));
+        future = executor.submit(scan);
+        try {
+            highlight = textComponent.getHighlighter().addHighlight(0, document.getLength(), painter);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds matches found by a scan, if it is still the current one
+     */
+    private void addMatches(Scan source, int[] batchStarts, int[] batchEnds, int batchCount) {
+        if (source != scan) {
+            return;
+        }
+        if (count + batchCount > starts.length) {
+            var capacity = Math.max(count + batchCount, starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        System.arraycopy(batchStarts, 0, starts, count, batchCount);
+        System.arraycopy(batchEnds, 0, ends, count, batchCount);
+        count += batchCount;
+        textComponent.repaint(textComponent.getVisibleRect());
+    }
+
+    // the listener is called under the write lock, before any reader sees the new text
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        textChanged();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        textChanged();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // only the attributes changed
+    }
+
+    private void textChanged() {
+        if (search != null) {
+            cancel();
+            rescanTimer.restart();
+        }
+    }
+
+    /**
+     * A scan of a document for all the matches of a search
+     */
+    private final class Scan implements Runnable {
+        private final Document document;
+        private final TextSearch search;
+        private volatile boolean cancelled;
+
+        private int[] batchStarts = new int[BATCH_SIZE];
+        private int[] batchEnds = new int[BATCH_SIZE];
+        private int batchCount;
+        private long batchTime;
+
+        Scan(Document document, TextSearch search) {
+            this.document = document;
+            this.search = search;
+        }
+
+        @Override
+        public void run() {
+            try {
+                var text = snapshot();
+                if (text == null) {
+                    return;
+                }
+                batchTime = System.currentTimeMillis();
+                for (int index = search.findNext(text, 0); index >= 0 && !cancelled; ) {
+                    var end = search.getMatchEnd();
+                    add(index, end);
+                    // step over empty matches so that they are not found again
+                    index = search.findNext(text, end > index ? end : index + 1);
+                }
+                publish();
+            } catch (CancellationException ignore) {
+            }
+        }
+
+        /**
+         * Copies the text of the document, taking the read lock once for each slice
+         *
+         * @return the text, or null if the scan was cancelled
+         */
+        private CharSequence snapshot() {
+            var length = new int[1];
+            document.render(() -> length[0] = document.getLength());
+            var chars = new char[length[0]];
+            var segment = new Segment();
+            segment.setPartialReturn(true);
+            for (int offset = 0; offset < chars.length && !cancelled; ) {
+                var sliceStart = offset;
+                var copied = new int[1];
+                document.render(() -> {
+                    if (cancelled) {
+                        return;
+                    }
+                    var sliceEnd = Math.min(chars.length, sliceStart + SLICE_SIZE);
+                    try {
+                        for (int position = sliceStart; position < sliceEnd; position += segment.count) {
+                            document.getText(position, sliceEnd - position, segment);
+                            System.arraycopy(segment.array, segment.offset, chars, position, segment.count);
+                        }
+                        copied[0] = sliceEnd - sliceStart;
+                    } catch (BadLocationException e) {
+                        cancelled = true;
+                    }
+                });
+                offset += copied[0];
+            }
+            return cancelled ? null : new Snapshot(chars);
+        }
+
+        private void add(int start, int end) {
+            batchStarts[batchCount] = start;
+            batchEnds[batchCount] = end;
+            batchCount++;
+            if (batchCount == BATCH_SIZE || System.currentTimeMillis() - batchTime >= BATCH_DELAY) {
+                publish();
+            }
+        }
+
+        /**
+         * Sends the found matches to the Event Dispatch Thread
+         */
+        private void publish() {
+            if (batchCount == 0 || cancelled) {
+                return;
+            }
+            var publishedStarts = batchStarts;
+            var publishedEnds = batchEnds;
+            var publishedCount = batchCount;
+            SwingUtilities.invokeLater(() -> addMatches(this, publishedStarts, publishedEnds, publishedCount));
+            batchStarts = new int[BATCH_SIZE];
+            batchEnds = new int[BATCH_SIZE];
+            batchCount = 0;
+            batchTime = System.currentTimeMillis();
+        }
+
+        /**
+         * The copied text, which stops a search by throwing a {@link CancellationException}
+         * as soon as the scan is cancelled, even in the middle of a long regular expression match
+         */
+        private final class Snapshot implements CharSequence {
+            private final char[] chars;
+
+            Snapshot(char[] chars) {
+                this.chars = chars;
+            }
+
+            @Override
+            public int length() {
+                return chars.length;
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                return chars[index];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return CharBuffer.wrap(chars, start, end - start);
+            }
+
+            @Override
+            public String toString() {
+                return new String(chars);
+            }
+        }
+    }
+
+    /**
+     * Paints the matches inside the part of the text being painted. A single highlight covers the whole
+     * document, and the matches to be painted are found by binary search, so the cost of painting does not
+     * depend on the number of matches elsewhere in the document. Empty matches are not painted.
+     */
+    private final class MatchPainter extends LayeredHighlighter.LayerPainter {
+        @Override
+        public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+            // only painted in layers, by the views
+        }
+
+        @Override
+        public Shape paintLayer(Graphics g, int offs0, int offs1, Shape viewBounds, JTextComponent editor, View view) {
+            // the first match ending after offs0
+            var low = 0;
+            var high = count;
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+                if (ends[middle] <= offs0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            Rectangle painted = null;
+            g.setColor(HIGHLIGHT_COLOR);
+            for (int i = low; i < count && starts[i] < offs1; i++) {
+                var start = Math.max(starts[i], offs0);
+                var end = Math.min(ends[i], offs1);
+                if (start >= end) {
+                    continue;
+                }
+                try {
+                    var shape = view.modelToView(start, Position.Bias.Forward, end, Position.Bias.Backward, viewBounds);
+                    var r = shape instanceof Rectangle ? (Rectangle) shape : shape.getBounds();
+                    g.fillRect(r.x, r.y, r.width, r.height);
+                    painted = painted == null ? new Rectangle(r) : painted.union(r);
+                } catch (BadLocationException e) {
+                    e.printStackTrace();
+                }
+            }
+            return painted;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A least-recently-used cache of compiled {@link Pattern}s, keyed by the regular expression and its flags,
+ * so that repeating a search does not compile the expression again.
+ */
+final class PatternCache {
+    private static final int CAPACITY = 32;
+
+    private static final Map<String, Pattern> cache = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private PatternCache() {
+    }
+
+    /**
+     * Returns the compiled pattern for a regular expression, compiling it if it is not cached
+     *
+     * @param regex the regular expression
+     * @param flags the flags of {@link Pattern#compile(String, int)}
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    static synchronized Pattern compile(String regex, int flags) {
+        var key = flags + "/" + regex;
+        var pattern = cache.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex, flags);
+            cache.put(key, pattern);
+        }
+        return pattern;
+    }
+}
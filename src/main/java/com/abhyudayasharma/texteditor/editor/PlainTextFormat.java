@@ -0,0 +1,296 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Imports and exports plain text files.
+ * <p>
+ * Files are read and written through a direct buffer of {@link #BUFFER_SIZE} bytes and a
+ * {@link java.nio.charset.CharsetDecoder} or {@link java.nio.charset.CharsetEncoder}, so no more than a buffer
+ * of the file is held at a time besides the document. The charset of an imported file is told by its byte order
+ * mark, or guessed from its first bytes: UTF-16 if every other byte is zero, UTF-8 if the bytes are valid UTF-8,
+ * and windows-1252 otherwise. A file guessed to be in UTF-8 is read again in windows-1252 if invalid UTF-8 turns
+ * up further on. Other bytes which are not valid in the charset are replaced with U+FFFD, and the caller is told
+ * how many were. Line breaks are converted to {@code '\n'} while importing, so the document never
+ * holds {@code "\r\n"} or {@code '\r'}. The text is added to the document a batch of {@link #BATCH_SIZE}
+ * characters at a time.
+ * <p>
+ * Exported files are written in UTF-8 without a byte order mark, with {@code '\n'} line breaks.
+ */
+final class PlainTextFormat {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The number of characters inserted into the document at once while importing
+     */
+    private static final int BATCH_SIZE = 1 << 20;
+
+    private static final AttributeSet[] PLAIN = {SimpleAttributeSet.EMPTY};
+
+    /**
+     * The charset of files which are neither UTF-8 nor UTF-16
+     */
+    private static final Charset FALLBACK_CHARSET = Charset.isSupported("windows-1252")
+            ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+
+    private PlainTextFormat() {
+    }
+
+    /**
+     * Reads a plain text file into a new document
+     *
+     * @param path     the file
+     * @param replaced told the number of byte sequences replaced with U+FFFD, if there are any
+     * @return the document, without formatting
+     * @throws IOException if the file cannot be read or is too long for a document
+     */
+    static StylizedDocument read(Path path, IntConsumer replaced) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            fill(channel, bytes);
+            var charset = detectCharset(bytes);
+            var byteOrderMark = byteOrderMarkLength(bytes);
+            if (charset.equals(StandardCharsets.UTF_8) && byteOrderMark == 0) {
+                // only the first bytes were checked, the rest of the file may not be UTF-8 after all
+                var document = read(channel, bytes, charset, null);
+                if (document != null) {
+                    return document;
+                }
+                channel.position(0);
+                bytes.clear();
+                fill(channel, bytes);
+                charset = FALLBACK_CHARSET;
+            }
+            bytes.position(byteOrderMark);
+            var count = new int[1];
+            var document = read(channel, bytes, charset, count);
+            if (count[0] > 0) {
+                replaced.accept(count[0]);
+            }
+            return document;
+        }
+    }
+
+    /**
+     * Fills a buffer from the position of a channel, to guess the charset from as many bytes as possible
+     */
+    private static void fill(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+            // read until the buffer is full or the file ends
+        }
+        bytes.flip();
+    }
+
+    /**
+     * Decodes the rest of a channel into a new document
+     *
+     * @param bytes    the bytes read so far, from their position
+     * @param replaced receives the number of byte sequences replaced with U+FFFD, or null to give up on the first
+     * @return the document, or null if replaced is null and a byte sequence is not valid in the charset
+     */
+    private static StylizedDocument read(FileChannel channel, ByteBuffer bytes, Charset charset, int[] replaced)
+            throws IOException {
+        var decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        var chars = CharBuffer.allocate(BUFFER_SIZE);
+        var document = new StylizedDocument();
+        var batch = new char[BATCH_SIZE];
+        var batchLength = 0;
+        var afterCarriageReturn = false;
+        var endOfInput = false;
+        var decoded = false;
+        while (true) {
+            // once the input is decoded, the decoder may still hold a few characters
+            var result = decoded ? decoder.flush(chars) : decoder.decode(bytes, chars, endOfInput);
+            chars.flip();
+            while (chars.hasRemaining()) {
+                var c = chars.get();
+                if (c == '\n' && afterCarriageReturn) {
+                    // the second half of "\r\n"
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                batch[batchLength++] = afterCarriageReturn ? '\n' : c;
+                if (batchLength == batch.length) {
+                    append(document, batch, batchLength);
+                    batchLength = 0;
+                }
+            }
+            chars.clear();
+            if (result.isError()) {
+                if (replaced == null) {
+                    return null;
+                }
+                replaced[0]++;
+                bytes.position(bytes.position() + result.length());
+                chars.put('\uFFFD');
+            } else if (result.isUnderflow()) {
+                if (decoded) {
+                    break;
+                }
+                if (endOfInput) {
+                    decoded = true;
+                } else {
+                    bytes.compact();
+                    endOfInput = channel.read(bytes) < 0;
+                    bytes.flip();
+                }
+            }
+        }
+        append(document, batch, batchLength);
+        return document;
+    }
+
+    /**
+     * Converts the "\r\n" and '\r' line breaks of a string to '\n', as done while importing
+     *
+     * @param text the text
+     * @return the text with '\n' line breaks only
+     */
+    static String normalizeLineBreaks(String text) {
+        return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    /**
+     * Adds text at the end of a document
+     */
+    private static void append(StylizedDocument document, char[] batch, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if ((long) document.getLength() + length >= Integer.MAX_VALUE) {
+            throw new IOException("The file is too large to be edited, it can be viewed with View Text File");
+        }
+        // the document copies the text, so the batch can be filled again
+        var text = length == batch.length ? batch : Arrays.copyOf(batch, length);
+        try {
+            document.insertRuns(document.getLength(), text, new int[]{length}, PLAIN, 1);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Guesses the charset of a file from its first bytes
+     *
+     * @param start the first bytes of the file, from its position to its limit, which are not consumed
+     * @return the charset of the byte order mark if there is one, or the charset which fits the bytes best
+     */
+    static Charset detectCharset(ByteBuffer start) {
+        var p = start.position();
+        var length = start.remaining();
+        var b0 = length > 0 ? start.get(p) & 0xFF : -1;
+        var b1 = length > 1 ? start.get(p + 1) & 0xFF : -1;
+        var b2 = length > 2 ? start.get(p + 2) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+
+        // text in UTF-16 made mostly of ASCII has a zero in every other byte, and a few in the others where
+        // a character such as U+0100 or U+4E00 has one in its low byte
+        var evenZeros = 0;
+        var oddZeros = 0;
+        for (int i = 0; i + 1 < length; i += 2) {
+            evenZeros += start.get(p + i) == 0 ? 1 : 0;
+            oddZeros += start.get(p + i + 1) == 0 ? 1 : 0;
+        }
+        var pairs = length / 2;
+        if (pairs > 0 && oddZeros > pairs * 3 / 4 && evenZeros <= pairs / 16) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (pairs > 0 && evenZeros > pairs * 3 / 4 && oddZeros <= pairs / 16) {
+            return StandardCharsets.UTF_16BE;
+        }
+
+        if (isUtf8(start)) {
+            return StandardCharsets.UTF_8;
+        }
+        return FALLBACK_CHARSET;
+    }
+
+    /**
+     * Returns whether bytes are valid UTF-8, allowing a sequence cut short at their end
+     */
+    private static boolean isUtf8(ByteBuffer bytes) {
+        var decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        var result = decoder.decode(bytes.duplicate(), CharBuffer.allocate(bytes.remaining()), false);
+        return !result.isError();
+    }
+
+    /**
+     * Returns the length of the byte order mark at the start of a file
+     *
+     * @param start the first bytes of the file, from its position
+     * @return the number of bytes to be skipped, 0 if there is no byte order mark
+     */
+    private static int byteOrderMarkLength(ByteBuffer start) {
+        var p = start.position();
+        var length = start.remaining();
+        if (length >= 3 && (start.get(p) & 0xFF) == 0xEF && (start.get(p + 1) & 0xFF) == 0xBB
+                && (start.get(p + 2) & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (length >= 2 && ((start.get(p) & 0xFF) == 0xFE && (start.get(p + 1) & 0xFF) == 0xFF
+                || (start.get(p) & 0xFF) == 0xFF && (start.get(p + 1) & 0xFF) == 0xFE)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes text to a channel in UTF-8
+     *
+     * @param text     the text, read from its position to its limit
+     * @param channel  the channel
+     * @param progress called with the number of chars written so far, or null
+     * @throws IOException if the channel cannot be written
+     */
+    static void write(CharBuffer text, WritableByteChannel channel, IntConsumer progress) throws IOException {
+        var encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        var start = text.position();
+        while (true) {
+            var result = encoder.encode(text, bytes, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(bytes);
+            }
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+            if (progress != null) {
+                progress.accept(text.position() - start);
+            }
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+}
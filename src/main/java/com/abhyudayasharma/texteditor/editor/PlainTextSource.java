@@ -0,0 +1,238 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link ChunkSource} reading a plain text file from a memory-mapped file.
+ * <p>
+ * Nothing is read when the file is opened. A background thread scans the bytes of the file for line breaks,
+ * recording where a chunk starts after every {@link #CHUNK_SIZE} bytes or so, which makes a sparse index of the
+ * lines: the first chunk can be shown as soon as the first line break after it has been found. A chunk is only
+ * decoded when it is loaded. The characters before each chunk are counted while scanning, without decoding
+ * them, for the charsets where the number of bytes tells the number of characters.
+ * <p>
+ * A byte order mark at the start of the file selects UTF-8 or UTF-16, and is not part of the text. Without one,
+ * the charset is guessed from the first {@link #DETECTION_SIZE} bytes by {@link PlainTextFormat#detectCharset}.
+ */
+final class PlainTextSource extends AbstractMappedSource {
+    /**
+     * The number of bytes after which a chunk ends at the next line break
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of bytes after which a chunk ends even without a line break
+     */
+    private static final int MAX_CHUNK_SIZE = CHUNK_SIZE * 4;
+
+    /**
+     * The number of bytes at the start of the file from which its charset is guessed
+     */
+    private static final int DETECTION_SIZE = 1 << 20;
+
+    private static final AttributeSet[] PLAIN = {SimpleAttributeSet.EMPTY};
+
+    private final Charset charset;
+    private final long textStart;
+    // the encoding of a line feed, and the size of the code units of the charset
+    private final byte[] lineFeed;
+    private boolean indexed;
+
+    private PlainTextSource(FileChannel channel) throws IOException {
+        super(channel);
+        var b0 = fileSize > 0 ? get(0) & 0xFF : -1;
+        var b1 = fileSize > 1 ? get(1) & 0xFF : -1;
+        var b2 = fileSize > 2 ? get(2) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            charset = StandardCharsets.UTF_8;
+            textStart = 3;
+        } else if (b0 == 0xFE && b1 == 0xFF) {
+            charset = StandardCharsets.UTF_16BE;
+            textStart = 2;
+        } else if (b0 == 0xFF && b1 == 0xFE) {
+            charset = StandardCharsets.UTF_16LE;
+            textStart = 2;
+        } else {
+            charset = PlainTextFormat.detectCharset(slice(0, Math.min(fileSize, DETECTION_SIZE)));
+            textStart = 0;
+        }
+        lineFeed = "\n".getBytes(charset);
+    }
+
+    /**
+     * Opens a text file and starts indexing it in the background
+     *
+     * @param path the file
+     * @return the source
+     * @throws IOException if the file cannot be read
+     */
+    static PlainTextSource open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var source = new PlainTextSource(channel);
+            var indexer = new Thread(source::index, "Index " + path.getFileName());
+            indexer.setDaemon(true);
+            indexer.start();
+            return source;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized int getChunkCount() {
+        // the end of the last chunk found is only known once the next one starts
+        return indexed ? chunkStarts : Math.max(chunkStarts - 1, 0);
+    }
+
+    @Override
+    public synchronized boolean isComplete() {
+        return indexed;
+    }
+
+    /**
+     * Scans the file for line breaks, recording where the chunks start
+     */
+    private void index() {
+        try {
+            indexLines();
+        } catch (RuntimeException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            // keep what has been found
+            indexed = true;
+        }
+        notifyListeners();
+    }
+
+    private void indexLines() {
+        var unit = lineFeed.length;
+        var utf8 = charset.equals(StandardCharsets.UTF_8);
+        var singleByte = !utf8 && charset.newEncoder().maxBytesPerChar() == 1;
+        var utf16 = charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16LE);
+        // the charsets whose characters cannot be counted from the bytes are decoded chunk by chunk
+        var decoder = utf8 || singleByte || utf16 ? null : newDecoder();
+
+        var chunkStart = textStart;
+        var chars = 0L;
+        addChunk(textStart, 0);
+        var lastNotification = 0L;
+        var position = textStart;
+        while (position + unit <= fileSize && !closed) {
+            var region = region(position);
+            var regionStart = regionStart(position);
+            // the code units never span two regions, the text starts at a multiple of their size
+            var limit = region.limit() - unit;
+            var i = (int) (position - regionStart);
+            for (; i <= limit && !closed; i += unit) {
+                var b = region.get(i);
+                if (utf8 && (b & 0xC0) != 0x80) {
+                    // a lead byte, four byte sequences are decoded to a surrogate pair
+                    chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+                }
+                var end = regionStart + i + unit;
+                var size = end - chunkStart;
+                // a chunk cut short must not split a character
+                if (size >= CHUNK_SIZE && (isLineFeed(region, i) || size >= MAX_CHUNK_SIZE
+                        && (utf8 ? startsCharacter(end) : !utf16 || !isHighSurrogate(region, i)))) {
+                    if (decoder != null) {
+                        chars += decode(decoder, chunkStart, end).length;
+                    } else if (!utf8) {
+                        chars = (end - textStart) / unit;
+                    }
+                    addChunk(end, chars);
+                    chunkStart = end;
+                    // the first chunk is shown as soon as it is found
+                    var now = System.currentTimeMillis();
+                    if (now - lastNotification >= NOTIFY_INTERVAL) {
+                        lastNotification = now;
+                        notifyListeners();
+                    }
+                }
+            }
+            // a partial code unit at the end of the file is left out
+            position = Math.max(regionStart + i, position + unit);
+        }
+        synchronized (this) {
+            if (chunkBytes[chunkStarts - 1] >= fileSize && chunkStarts > 1) {
+                // the text ended right after a chunk boundary
+                chunkStarts--;
+            }
+        }
+    }
+
+    private boolean isLineFeed(ByteBuffer region, int index) {
+        for (int j = 0; j < lineFeed.length; j++) {
+            if (region.get(index + j) != lineFeed[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the UTF-16 code unit at an index of a region is the first half of a surrogate pair
+     */
+    private boolean isHighSurrogate(ByteBuffer region, int index) {
+        var first = region.get(index) & 0xFF;
+        var second = region.get(index + 1) & 0xFF;
+        var unit = charset.equals(StandardCharsets.UTF_16BE) ? first << 8 | second : second << 8 | first;
+        return Character.isHighSurrogate((char) unit);
+    }
+
+    private CharsetDecoder newDecoder() {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private char[] decode(CharsetDecoder decoder, long start, long end) {
+        if (end <= start) {
+            return new char[0];
+        }
+        try {
+            var decoded = decoder.reset().decode(slice(start, end));
+            var text = new char[decoded.remaining()];
+            decoded.get(text);
+            return text;
+        } catch (CharacterCodingException e) {
+            // malformed input is replaced, never reported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public TextChunk loadChunk(int index) throws IOException {
+        long byteStart;
+        long byteEnd;
+        long charStart;
+        synchronized (this) {
+            if (index < 0 || index >= getChunkCount()) {
+                throw new IndexOutOfBoundsException("Chunk " + index + " has not been found");
+            }
+            byteStart = chunkBytes[index];
+            charStart = chunkChars[index];
+            byteEnd = index + 1 == chunkStarts ? fileSize : chunkBytes[index + 1];
+        }
+        if (closed) {
+            throw new IOException("The file has been closed");
+        }
+        var text = decode(newDecoder(), byteStart, byteEnd);
+        return new TextChunk(index, charStart, text, new int[]{text.length}, PLAIN, text.length == 0 ? 0 : 1);
+    }
+}
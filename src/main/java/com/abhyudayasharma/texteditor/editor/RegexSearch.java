@@ -0,0 +1,156 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds a regular expression in a document. The {@link Pattern} is taken from the {@link PatternCache}
+ * and matched directly against the {@link CharSequence} given, so a {@link DocumentCharSequence}
+ * is searched without copying the document.
+ * Replacements may refer to the groups of the match with {@code $1} or {@code ${name}}, like
+ * {@link Matcher#appendReplacement(StringBuilder, String)}.
+ */
+final class RegexSearch implements TextSearch {
+    /**
+     * The size of the range before the end of a backwards search which is searched first
+     */
+    private static final int WINDOW_SIZE = 4096;
+
+    private final String regex;
+    private final boolean caseSensitive;
+    private final Pattern pattern;
+    private CharSequence text;
+    private Matcher matcher;
+
+    /**
+     * Prepares a search for a regular expression. ^ and $ match at line breaks.
+     *
+     * @param regex         the regular expression
+     * @param caseSensitive find text ignoring case if false
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    RegexSearch(String regex, boolean caseSensitive) {
+        this.regex = regex;
+        this.caseSensitive = caseSensitive;
+        var flags = Pattern.MULTILINE | (caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        pattern = PatternCache.compile(regex, flags);
+    }
+
+    @Override
+    public String getPattern() {
+        return regex;
+    }
+
+    @Override
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    @Override
+    public boolean isRegularExpression() {
+        return true;
+    }
+
+    /**
+     * Returns a matcher for the text, reusing the last one if the text is the same
+     */
+    private Matcher matcher(CharSequence text) {
+        if (matcher == null || this.text != text) {
+            this.text = text;
+            matcher = pattern.matcher(text);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+        }
+        return matcher;
+    }
+
+    @Override
+    public int findNext(CharSequence text, int from) {
+        if (from > text.length()) {
+            return -1;
+        }
+        var m = matcher(text);
+        return m.find(Math.max(from, 0)) ? m.start() : -1;
+    }
+
+    /**
+     * Searches ranges ending at {@code before} which double in size until a match is found,
+     * so matches close to the end are found without scanning the whole text.
+     */
+    @Override
+    public int findPrevious(CharSequence text, int before) {
+        before = Math.min(before, text.length());
+        var m = matcher(text);
+        for (int window = WINDOW_SIZE; ; window = (int) Math.min((long) window * 2, Integer.MAX_VALUE)) {
+            var start = Math.max(0, before - window);
+            m.region(start, before);
+            var last = -1;
+            while (m.find()) {
+                last = m.start();
+            }
+            if (last >= 0) {
+                // match again so the groups of the last match are available
+                m.region(last, before);
+                m.lookingAt();
+                return last;
+            }
+            if (start == 0) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int getMatchEnd() {
+        return matcher.end();
+    }
+
+    @Override
+    public String getReplacement(String replacement) {
+        var sb = new StringBuilder();
+        var length = replacement.length();
+        for (int i = 0; i < length; i++) {
+            var c = replacement.charAt(i);
+            if (c == '\\') {
+                if (++i == length) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                sb.append(replacement.charAt(i));
+            } else if (c == '$') {
+                if (++i == length) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                var next = replacement.charAt(i);
+                String group;
+                if (next == '{') {
+                    var close = replacement.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    group = matcher.group(replacement.substring(i + 1, close));
+                    i = close;
+                } else if (next >= '0' && next <= '9') {
+                    // use as many digits as still make a valid group number
+                    var number = next - '0';
+                    while (i + 1 < length && Character.isDigit(replacement.charAt(i + 1))) {
+                        var longer = number * 10 + (replacement.charAt(i + 1) - '0');
+                        if (longer > matcher.groupCount()) {
+                            break;
+                        }
+                        number = longer;
+                        i++;
+                    }
+                    group = matcher.group(number);
+                } else {
+                    throw new IllegalArgumentException("Illegal group reference");
+                }
+                if (group != null) {
+                    sb.append(group);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
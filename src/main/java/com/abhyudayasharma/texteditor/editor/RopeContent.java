@@ -0,0 +1,668 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * An {@link AbstractDocument.Content} which stores the text as a rope: a balanced tree (a treap) of
+ * fixed-capacity character chunks, ordered by their position in the text.
+ * Inserting, removing and reading text only visits the chunks on the path to the affected offset,
+ * so these operations are O(log n) in the size of the document instead of moving a gap across it.
+ * <p>
+ * {@link Position}s are anchored to the chunk they point into, so an edit only has to adjust the
+ * positions inside the edited chunks. Like {@link javax.swing.text.GapContent}, a position at the offset
+ * of an insertion moves forward (except at offset 0), positions inside a removed range collapse to its start,
+ * and undoing a removal restores the positions that were inside the removed range.
+ */
+class RopeContent implements AbstractDocument.Content, Serializable {
+    /**
+     * The maximum number of characters in a chunk
+     */
+    static final int CHUNK_SIZE = 2048;
+
+    /**
+     * The number of characters put in a chunk when it is rebuilt, leaving space for typing
+     */
+    private static final int FILL_SIZE = CHUNK_SIZE * 3 / 4;
+
+    private transient Node root;
+    private transient Random random;
+    private transient ReferenceQueue<RopePosition> queue;
+
+    /**
+     * Creates the content with the implied break at the end of a document
+     */
+    RopeContent() {
+        init("\n");
+    }
+
+    private void init(String text) {
+        random = new Random();
+        queue = new ReferenceQueue<>();
+        root = null;
+        for (var chunk : chunk(text.toCharArray(), 0, text.length())) {
+            root = merge(root, chunk);
+        }
+        root.parent = null;
+    }
+
+    // --- AbstractDocument.Content methods -------------------------
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        purgeMarks();
+        var position = new RopePosition();
+        var mark = new Mark(position, queue);
+        position.mark = mark;
+        place(mark, offset);
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return root.size;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where >= length()) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        insert(where, str);
+        return new InsertEdit(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", length());
+        }
+        var removed = getString(where, nitems);
+        var positions = positionsInRange(where, nitems);
+        delete(where, nitems);
+        return new RemoveEdit(where, removed, positions);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        var sb = new StringBuilder(len);
+        var node = nodeAt(where);
+        var local = where - start(node);
+        while (len > 0) {
+            var count = Math.min(len, node.length - local);
+            sb.append(node.chars, local, count);
+            len -= count;
+            local = 0;
+            node = next(node);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        var node = nodeAt(where);
+        var local = where - start(node);
+        if (len <= node.length - local || txt.isPartialReturn()) {
+            // the text is in a single chunk, no copy required
+            txt.array = node.chars;
+            txt.offset = local;
+            txt.count = Math.min(len, node.length - local);
+            return;
+        }
+        var array = new char[len];
+        var copied = 0;
+        while (copied < len) {
+            var count = Math.min(len - copied, node.length - local);
+            System.arraycopy(node.chars, local, array, copied, count);
+            copied += count;
+            local = 0;
+            node = next(node);
+        }
+        txt.array = array;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid range", length());
+        }
+    }
+
+    // --- text editing -------------------------------------------
+
+    /**
+     * Inserts text, growing the chunk in place if it has room and splitting it into new chunks otherwise
+     */
+    private void insert(int where, String str) {
+        purgeMarks();
+        var length = str.length();
+        if (length == 0) {
+            return;
+        }
+        var node = nodeAt(where);
+        var nodeStart = start(node);
+        var local = where - nodeStart;
+
+        if (node.length + length <= CHUNK_SIZE) {
+            System.arraycopy(node.chars, local, node.chars, local + length, node.length - local);
+            str.getChars(0, length, node.chars, local);
+            node.length += length;
+            if (node.marks != null) {
+                for (var mark : node.marks) {
+                    if (mark.local > local || (mark.local == local && where != 0)) {
+                        mark.local += length;
+                    }
+                }
+            }
+            for (var n = node; n != null; n = n.parent) {
+                n.size += length;
+            }
+            return;
+        }
+
+        var combined = new char[node.length + length];
+        System.arraycopy(node.chars, 0, combined, 0, local);
+        str.getChars(0, length, combined, local);
+        System.arraycopy(node.chars, local, combined, local + length, node.length - local);
+
+        var marks = new ArrayList<Mark>();
+        if (node.marks != null) {
+            for (var mark : node.marks) {
+                if (mark.local > local || (mark.local == local && where != 0)) {
+                    mark.local += length;
+                }
+                marks.add(mark);
+            }
+        }
+        replaceNodes(nodeStart, node.length, combined, combined.length, marks);
+    }
+
+    /**
+     * Removes text. A removal inside a single chunk is done in place, otherwise all the chunks in the
+     * range are replaced by new chunks holding the text which remains.
+     */
+    private void delete(int where, int nitems) {
+        purgeMarks();
+        if (nitems == 0) {
+            return;
+        }
+        var first = nodeAt(where);
+        var firstStart = start(first);
+        var local = where - firstStart;
+
+        if (local + nitems < first.length) {
+            System.arraycopy(first.chars, local + nitems, first.chars, local, first.length - local - nitems);
+            first.length -= nitems;
+            if (first.marks != null) {
+                for (var mark : first.marks) {
+                    mark.local = shiftForRemoval(mark.local, local, nitems);
+                }
+            }
+            for (var n = first; n != null; n = n.parent) {
+                n.size -= nitems;
+            }
+            return;
+        }
+
+        // collect all the chunks touched by the removal
+        var end = where + nitems;
+        var marks = new ArrayList<Mark>();
+        var remaining = new char[local + CHUNK_SIZE];
+        System.arraycopy(first.chars, 0, remaining, 0, local);
+        var replacedLength = 0;
+        var node = first;
+        var nodeOffset = 0;
+        while (true) {
+            if (node.marks != null) {
+                for (var mark : node.marks) {
+                    mark.local = shiftForRemoval(nodeOffset + mark.local, local, nitems);
+                    marks.add(mark);
+                }
+            }
+            replacedLength += node.length;
+            nodeOffset += node.length;
+            if (firstStart + nodeOffset > end) {
+                break;
+            }
+            node = next(node);
+        }
+        // the text of the last chunk after the removed range
+        var tail = firstStart + nodeOffset - end;
+        System.arraycopy(node.chars, node.length - tail, remaining, local, tail);
+        replaceNodes(firstStart, replacedLength, remaining, local + tail, marks);
+    }
+
+    private static int shiftForRemoval(int offset, int where, int nitems) {
+        if (offset <= where) {
+            return offset;
+        }
+        return offset < where + nitems ? where : offset - nitems;
+    }
+
+    /**
+     * Replaces the chunks covering a range with new chunks built from the given text,
+     * and re-anchors the marks, whose local offsets are relative to the start of the range.
+     */
+    private void replaceNodes(int start, int oldLength, char[] text, int length, ArrayList<Mark> marks) {
+        var left = split(root, start);
+        var rest = split(left[1], oldLength);
+        var right = rest[1];
+
+        Node middle = null;
+        var chunks = chunk(text, 0, length);
+        for (var chunk : chunks) {
+            middle = merge(middle, chunk);
+        }
+        root = merge(merge(left[0], middle), right);
+        root.parent = null;
+
+        // anchor the marks in the new chunks, or at the start of the following chunk if nothing remains
+        var chunkIndex = 0;
+        var chunkStart = 0;
+        marks.sort((a, b) -> Integer.compare(a.local, b.local));
+        for (var mark : marks) {
+            // the chunk holding the mark has been discarded
+            mark.node = null;
+            var offset = mark.local;
+            while (chunkIndex < chunks.size() && offset >= chunkStart + chunks.get(chunkIndex).length
+                    && chunkIndex + 1 < chunks.size()) {
+                chunkStart += chunks.get(chunkIndex).length;
+                chunkIndex++;
+            }
+            if (chunkIndex < chunks.size() && offset < chunkStart + chunks.get(chunkIndex).length) {
+                mark.local = offset - chunkStart;
+                attach(mark, chunks.get(chunkIndex));
+            } else {
+                place(mark, start + offset);
+            }
+        }
+    }
+
+    /**
+     * Splits text into new chunks
+     */
+    private ArrayList<Node> chunk(char[] text, int offset, int length) {
+        var chunks = new ArrayList<Node>(length / FILL_SIZE + 1);
+        var count = (length + FILL_SIZE - 1) / FILL_SIZE;
+        for (int i = 0; i < count; i++) {
+            // spread the text evenly between the chunks
+            var from = offset + (int) ((long) length * i / count);
+            var to = offset + (int) ((long) length * (i + 1) / count);
+            var node = new Node(random.nextInt());
+            System.arraycopy(text, from, node.chars, 0, to - from);
+            node.length = to - from;
+            node.size = node.length;
+            chunks.add(node);
+        }
+        return chunks;
+    }
+
+    // --- positions ----------------------------------------------
+
+    /**
+     * Anchors a mark at an offset. Marks are kept in the chunk containing the character at their offset,
+     * a mark at the very end is kept at the end of the last chunk.
+     */
+    private void place(Mark mark, int offset) {
+        Node node;
+        if (offset == length()) {
+            node = last(root);
+        } else {
+            node = nodeAt(offset);
+        }
+        mark.local = offset - start(node);
+        attach(mark, node);
+    }
+
+    private static void attach(Mark mark, Node node) {
+        if (node.marks == null) {
+            node.marks = new ArrayList<>(2);
+        }
+        node.marks.add(mark);
+        mark.node = node;
+    }
+
+    private int offsetOf(Mark mark) {
+        return start(mark.node) + mark.local;
+    }
+
+    /**
+     * Removes the marks whose positions are no longer referenced
+     */
+    private void purgeMarks() {
+        Mark mark;
+        while ((mark = (Mark) queue.poll()) != null) {
+            var node = mark.node;
+            if (node != null && node.marks != null) {
+                // drop all the cleared marks of the chunk at once
+                node.marks.removeIf(m -> m.get() == null);
+                if (node.marks.isEmpty()) {
+                    node.marks = null;
+                }
+            }
+            mark.node = null;
+        }
+    }
+
+    /**
+     * Records the positions inside a range, relative to its start, so they can be restored by an undo
+     */
+    private ArrayList<PositionRef> positionsInRange(int where, int nitems) {
+        var refs = new ArrayList<PositionRef>();
+        var end = where + nitems;
+        var node = nodeAt(where);
+        var nodeStart = start(node);
+        while (node != null && nodeStart <= end) {
+            if (node.marks != null) {
+                for (var mark : node.marks) {
+                    var offset = nodeStart + mark.local;
+                    if (offset >= where && offset <= end && mark.get() != null) {
+                        refs.add(new PositionRef(mark, offset - where));
+                    }
+                }
+            }
+            nodeStart += node.length;
+            node = next(node);
+        }
+        return refs;
+    }
+
+    private void restorePositions(ArrayList<PositionRef> refs, int where) {
+        // take the marks out of their chunks in one pass per chunk
+        var moved = Collections.newSetFromMap(new IdentityHashMap<Mark, Boolean>());
+        for (var ref : refs) {
+            if (ref.mark.get() != null && ref.mark.node != null) {
+                moved.add(ref.mark);
+            }
+        }
+        var nodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        for (var mark : moved) {
+            nodes.add(mark.node);
+        }
+        for (var node : nodes) {
+            node.marks.removeIf(moved::contains);
+            if (node.marks.isEmpty()) {
+                node.marks = null;
+            }
+        }
+        for (var ref : refs) {
+            if (moved.contains(ref.mark)) {
+                place(ref.mark, where + ref.offset);
+            }
+        }
+    }
+
+    // --- tree operations ----------------------------------------
+
+    /**
+     * Finds the chunk containing the character at the offset
+     */
+    private Node nodeAt(int offset) {
+        var node = root;
+        while (true) {
+            var leftSize = size(node.left);
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length || node.right == null) {
+                return node;
+            } else {
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Computes the offset of the first character of a chunk by walking up to the root
+     */
+    private static int start(Node node) {
+        var start = size(node.left);
+        for (var n = node; n.parent != null; n = n.parent) {
+            if (n == n.parent.right) {
+                start += size(n.parent.left) + n.parent.length;
+            }
+        }
+        return start;
+    }
+
+    private static Node next(Node node) {
+        if (node.right != null) {
+            node = node.right;
+            while (node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private static Node last(Node node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = size(node.left) + node.length + size(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    /**
+     * Splits a tree at a chunk boundary
+     *
+     * @return the trees holding the text before and after the offset
+     */
+    private static Node[] split(Node node, int offset) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        var leftSize = size(node.left);
+        if (offset <= leftSize) {
+            var parts = split(node.left, offset);
+            node.left = parts[1];
+            update(node);
+            node.parent = null;
+            if (parts[0] != null) {
+                parts[0].parent = null;
+            }
+            return new Node[]{parts[0], node};
+        } else {
+            var parts = split(node.right, offset - leftSize - node.length);
+            node.right = parts[0];
+            update(node);
+            node.parent = null;
+            if (parts[1] != null) {
+                parts[1].parent = null;
+            }
+            return new Node[]{node, parts[1]};
+        }
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    // --- serialization ------------------------------------------
+
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        try {
+            s.writeObject(getString(0, length()));
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void readObject(ObjectInputStream s) throws ClassNotFoundException, IOException {
+        s.defaultReadObject();
+        init((String) s.readObject());
+    }
+
+    // --- inner classes ------------------------------------------
+
+    /**
+     * A chunk of text and the root of the subtree of the chunks around it
+     */
+    private static final class Node {
+        final char[] chars = new char[CHUNK_SIZE];
+        final int priority;
+        int length;
+        int size;
+        Node left;
+        Node right;
+        Node parent;
+        ArrayList<Mark> marks;
+
+        Node(int priority) {
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * The location of a {@link RopePosition}, held weakly so unused positions can be discarded
+     */
+    private static final class Mark extends WeakReference<RopePosition> {
+        Node node;
+        int local;
+
+        Mark(RopePosition position, ReferenceQueue<RopePosition> queue) {
+            super(position, queue);
+        }
+    }
+
+    private final class RopePosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return offsetOf(mark);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    /**
+     * A position inside a removed range and its offset from the start of the range
+     */
+    private static final class PositionRef {
+        final Mark mark;
+        final int offset;
+
+        PositionRef(Mark mark, int offset) {
+            this.mark = mark;
+            this.offset = offset;
+        }
+    }
+
+    private final class InsertEdit extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private String string;
+        private ArrayList<PositionRef> positions;
+
+        InsertEdit(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                positions = positionsInRange(offset, length);
+                string = getString(offset, length);
+                delete(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insert(offset, string);
+            restorePositions(positions, offset);
+            string = null;
+            positions = null;
+        }
+    }
+
+    private final class RemoveEdit extends AbstractUndoableEdit {
+        private final int offset;
+        private final String string;
+        private ArrayList<PositionRef> positions;
+
+        RemoveEdit(int offset, String string, ArrayList<PositionRef> positions) {
+            this.offset = offset;
+            this.string = string;
+            this.positions = positions;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insert(offset, string);
+            restorePositions(positions, offset);
+            positions = null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            positions = positionsInRange(offset, string.length());
+            delete(offset, string.length());
+        }
+    }
+}
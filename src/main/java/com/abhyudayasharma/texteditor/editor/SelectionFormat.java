@@ -0,0 +1,44 @@
+package com.abhyudayasharma.texteditor.editor;
+
+/**
+ * The formatting shared by every character of the selection in an {@link Editor},
+ * as returned by {@link Editor#getSelectionFormat()}.
+ */
+public final class SelectionFormat {
+    private final boolean bold;
+    private final boolean italic;
+    private final boolean underline;
+
+    SelectionFormat(boolean bold, boolean italic, boolean underline) {
+        this.bold = bold;
+        this.italic = italic;
+        this.underline = underline;
+    }
+
+    /**
+     * Checks if the selected text is bold
+     *
+     * @return true if every character in the selection is bold. Otherwise false.
+     */
+    public boolean isBold() {
+        return bold;
+    }
+
+    /**
+     * Checks if the selected text is italic
+     *
+     * @return true if every character in the selection is italic. Otherwise false.
+     */
+    public boolean isItalic() {
+        return italic;
+    }
+
+    /**
+     * Checks if the selected text is underlined
+     *
+     * @return true if every character in the selection is underline. Otherwise false.
+     */
+    public boolean isUnderline() {
+        return underline;
+    }
+}
@@ -1,26 +1,33 @@
 package com.abhyudayasharma.texteditor.editor;
 
-import javax.swing.text.AttributeSet;
 import java.awt.*;
-import java.awt.datatransfer.StringSelection;
-import java.util.ArrayList;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
 
 /**
  * A clipboard used by the {@link StylizedTextPane}.
- * Sets the system clipboard to plain text on cut or copy.
- * If retrieving data from clipboard inside a {@link StylizedTextPane},
- * the data is returned as characters with their respective {@link javax.swing.text.AttributeSet}
+ * On cut or copy, the system clipboard is given a {@link Transferable} which offers the formatted text to the
+ * {@link StylizedTextPane}s of this application, and its plain text to everyone else.
+ * The formatted text is kept only while the system clipboard holds it. Once another application or component
+ * puts something on the system clipboard, this clipboard becomes empty.
  * A singleton class representing that there exists just one Clipboard
  */
 class StylizedClipboard {
+    /**
+     * The flavor of the formatted text, which can only be used inside this application
+     */
+    static final DataFlavor STYLIZED_FLAVOR = createStylizedFlavor();
+
     private final static StylizedClipboard clipboard = new StylizedClipboard();
-    private final ArrayList<StylizedCharacter> contents;
+    private StylizedSelection selection;
 
     /**
      * Singleton initializer
      */
     private StylizedClipboard() {
-        contents = new ArrayList<>();
     }
 
     /**
@@ -32,33 +39,41 @@ class StylizedClipboard {
         return clipboard;
     }
 
+    private static DataFlavor createStylizedFlavor() {
+        try {
+            return new DataFlavor(DataFlavor.javaJVMLocalObjectMimeType + ";class=" + StylizedText.class.getName(),
+                    "Stylized Text", StylizedText.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
-     * Returns the contents of the clipboard
+     * Returns whether the system clipboard still holds the contents of this clipboard
      *
-     * @return the contents of the clipboard
+     * @return true if the contents were not replaced by another application or component
      */
-    ArrayList<StylizedCharacter> getContents() {
-        return contents;
+    synchronized boolean isOwner() {
+        return selection != null;
     }
 
     /**
-     * Sets the contents of the clipboard from the characters and their attributes provided
-     * as an {@link ArrayList} argument.
+     * Returns the contents of the clipboard
      *
-     * @param newContents an {@link ArrayList} containing the characters and their respective attributes
+     * @return the contents of the clipboard, empty if the system clipboard holds something else
      */
-    void setContents(ArrayList<StylizedCharacter> newContents) {
-        clear();
-        contents.addAll(newContents);
-        setSystemClipboard(getContentsAsString());
+    synchronized StylizedText getContents() {
+        return selection == null ? StylizedText.EMPTY : selection.contents;
     }
 
     /**
-     * Clear the clipboard. Also clear the system clipboard.
+     * Sets the contents of the clipboard, and puts them on the system clipboard.
+     *
+     * @param newContents the text and the runs of its attributes
      */
-    private void clear() {
-        contents.clear();
-        setSystemClipboard("");
+    synchronized void setContents(StylizedText newContents) {
+        selection = new StylizedSelection(newContents);
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
     }
 
     /**
@@ -67,41 +82,56 @@ class StylizedClipboard {
      * @return String containing the contents of the clipboard.
      */
     String getContentsAsString() {
-        var sb = new StringBuilder();
-        for (StylizedCharacter c :
-                contents) {
-            sb.append(c.character);
-        }
-        return sb.toString();
+        return getContents().getText();
     }
 
     /**
-     * Set the system clipboard to the {@link String} provided as the argument
-     *
-     * @param s the string to which to set the clipboard
+     * Called when the system clipboard stops holding a selection
      */
-    private void setSystemClipboard(String s) {
-        var clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        var selection = new StringSelection(s);
-        clipboard.setContents(selection, selection);
+    private synchronized void lostOwnership(StylizedSelection lost) {
+        if (selection == lost) {
+            selection = null;
+        }
     }
 
     /**
-     * A container for the attributes of a styled character
+     * The contents of the system clipboard after a cut or copy in a {@link StylizedTextPane}.
+     * Nothing is converted until the data is asked for, and the plain text is the {@link String}
+     * already held by the {@link StylizedText}.
      */
-    static class StylizedCharacter {
-        final Character character;
-        final AttributeSet attributes;
-
-        /**
-         * A creates the container for the characters
-         *
-         * @param character  the character
-         * @param attributes the attributes of the character
-         */
-        StylizedCharacter(Character character, AttributeSet attributes) {
-            this.character = character;
-            this.attributes = attributes;
+    private static final class StylizedSelection implements Transferable, ClipboardOwner {
+        private static final DataFlavor[] FLAVORS = {STYLIZED_FLAVOR, DataFlavor.stringFlavor};
+
+        private final StylizedText contents;
+
+        StylizedSelection(StylizedText contents) {
+            this.contents = contents;
+        }
+
+        @Override
+        public DataFlavor[] getTransferDataFlavors() {
+            return FLAVORS.clone();
+        }
+
+        @Override
+        public boolean isDataFlavorSupported(DataFlavor flavor) {
+            return STYLIZED_FLAVOR.equals(flavor) || DataFlavor.stringFlavor.equals(flavor);
+        }
+
+        @Override
+        public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+            if (STYLIZED_FLAVOR.equals(flavor)) {
+                return contents;
+            }
+            if (DataFlavor.stringFlavor.equals(flavor)) {
+                return contents.getText();
+            }
+            throw new UnsupportedFlavorException(flavor);
+        }
+
+        @Override
+        public void lostOwnership(Clipboard systemClipboard, Transferable transferable) {
+            clipboard.lostOwnership(this);
         }
     }
 }
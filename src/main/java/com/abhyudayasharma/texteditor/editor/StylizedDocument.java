@@ -0,0 +1,534 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.*;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+import java.awt.font.TextAttribute;
+import java.text.Bidi;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.BitSet;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The {@link javax.swing.text.StyledDocument} used by the {@link StylizedTextPane}.
+ * Stores its text in a {@link RopeContent} so that edits and reads stay fast for multi-megabyte documents,
+ * while the character attributes are kept as runs in the element tree of {@link DefaultStyledDocument}.
+ * The attribute sets of the runs come from the shared {@link AttributePool}.
+ */
+class StylizedDocument extends DefaultStyledDocument {
+    /**
+     * The property of {@link AbstractDocument} turning on the support for complex text, which is not public
+     */
+    private static final String I18N_PROPERTY = "i18n";
+
+    private EditGroup compoundEdit;
+    private int compoundEditDepth;
+
+    /**
+     * Creates an empty document
+     */
+    StylizedDocument() {
+        super(new RopeContent(), AttributePool.getPool());
+    }
+
+    /**
+     * Creates a document with the text and character attributes of another {@link StyledDocument}
+     *
+     * @param source the document to be copied
+     * @throws BadLocationException if the source document changes while being copied
+     */
+    StylizedDocument(StyledDocument source) throws BadLocationException {
+        this();
+        var length = source.getLength();
+        var text = source.getText(0, length).toCharArray();
+        var runLengths = new ArrayList<Integer>();
+        var runAttributes = new ArrayList<AttributeSet>();
+        for (int offset = 0; offset < length; ) {
+            var run = source.getCharacterElement(offset);
+            var end = Math.min(run.getEndOffset(), length);
+            runLengths.add(end - offset);
+            runAttributes.add(run.getAttributes().copyAttributes());
+            offset = end;
+        }
+        load(text, runLengths.stream().mapToInt(Integer::intValue).toArray(),
+                runAttributes.toArray(new AttributeSet[0]), runLengths.size());
+    }
+
+    /**
+     * Fills an empty document with text made of runs of characters with the same attributes.
+     * The element tree for all the runs and paragraphs is built in one step from {@link ElementSpec}s,
+     * instead of inserting the text and then changing the attributes of each run.
+     *
+     * @param text          the text, which must not include the implied break at the end of the document
+     * @param runLengths    the number of characters in each run, the lengths add up to the length of the text
+     * @param runAttributes the character attributes of each run
+     * @param runCount      the number of runs to be used
+     * @throws BadLocationException  if the runs do not fit the text
+     * @throws IllegalStateException if the document is not empty
+     */
+    void load(char[] text, int[] runLengths, AttributeSet[] runAttributes, int runCount)
+            throws BadLocationException {
+        if (getLength() != 0) {
+            throw new IllegalStateException("The document is not empty");
+        }
+        insertRuns(0, text, runLengths, runAttributes, runCount);
+    }
+
+    /**
+     * Inserts formatted text, like the text of the clipboard, with the runs of its attributes.
+     *
+     * @param offset the offset at which the text is inserted
+     * @param text   the text
+     * @throws BadLocationException if the offset is not inside the document
+     * @see #insertRuns(int, char[], int[], AttributeSet[], int)
+     */
+    void insertText(int offset, StylizedText text) throws BadLocationException {
+        var runCount = text.getRunCount();
+        var runLengths = new int[runCount];
+        var runAttributes = new AttributeSet[runCount];
+        for (int i = 0; i < runCount; i++) {
+            runLengths[i] = text.getRunLength(i);
+            runAttributes[i] = text.getRunAttributes(i);
+        }
+        insertRuns(offset, text.getText().toCharArray(), runLengths, runAttributes, runCount);
+    }
+
+    /**
+     * Inserts text made of runs of characters with the same attributes. The runs and paragraphs are added
+     * to the element tree in one step from {@link ElementSpec}s, so the whole insertion is a single
+     * {@link DocumentEvent} and a single undoable edit, instead of an insertion followed by a change
+     * for every run.
+     * <p>
+     * The specs are joined to the runs and paragraphs around the offset the same way
+     * {@link DefaultStyledDocument#insertUpdate} joins the text of {@link #insertString}, for a tree of
+     * paragraphs holding runs.
+     *
+     * @param offset        the offset at which the text is inserted
+     * @param text          the text
+     * @param runLengths    the number of characters in each run, the lengths add up to the length of the text
+     * @param runAttributes the character attributes of each run
+     * @param runCount      the number of runs to be used
+     * @throws BadLocationException if the offset is not inside the document or the runs do not fit the text
+     */
+    void insertRuns(int offset, char[] text, int[] runLengths, AttributeSet[] runAttributes, int runCount)
+            throws BadLocationException {
+        if (text.length == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            var documentLength = getLength();
+            if (offset < 0 || offset > documentLength) {
+                throw new BadLocationException("Invalid insertion offset", offset);
+            }
+            var paragraph = getParagraphElement(offset);
+            var paragraphAttributes = paragraph.getAttributes();
+            // the run which the inserted text extends
+            var previousRun = getCharacterElement(Math.max(offset - 1, 0));
+            var previousAttributes = previousRun.getAttributes();
+            var afterBreak = offset > 0 && paragraph.getStartOffset() == offset;
+            var atRunEnd = offset > 0 && previousRun.getEndOffset() == offset;
+
+            var specs = new ArrayList<ElementSpec>();
+            ElementSpec lastStart = null;
+            if (afterBreak) {
+                // close the previous paragraph and open the one at the offset, the inserted text goes before its runs
+                specs.add(new ElementSpec(paragraphAttributes, ElementSpec.EndTagType));
+                lastStart = new ElementSpec(paragraphAttributes, ElementSpec.StartTagType);
+                specs.add(lastStart);
+            }
+            var start = 0;
+            AttributeSet lastAttributes = null;
+            for (int i = 0; i < runCount; i++) {
+                var attributes = runAttributes[i];
+                var end = start + runLengths[i];
+                if (end > text.length) {
+                    throw new BadLocationException("Run outside the text", end);
+                }
+                // a run is split at each line break into the content of separate paragraphs
+                var pieceStart = start;
+                for (int j = start; j < end; j++) {
+                    if (text[j] == '\n') {
+                        specs.add(content(attributes, text, pieceStart, j + 1));
+                        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+                        lastStart = new ElementSpec(paragraphAttributes, ElementSpec.StartTagType);
+                        specs.add(lastStart);
+                        pieceStart = j + 1;
+                    }
+                }
+                if (pieceStart < end) {
+                    specs.add(content(attributes, text, pieceStart, end));
+                }
+                if (end > start) {
+                    lastAttributes = attributes;
+                }
+                start = end;
+            }
+            if (start != text.length) {
+                throw new BadLocationException("Runs do not cover the text", start);
+            }
+
+            var first = specs.get(0);
+            if (first.getType() == ElementSpec.ContentType && previousAttributes.isEqual(first.getAttributes())) {
+                first.setDirection(ElementSpec.JoinPreviousDirection);
+            }
+            if (lastStart != null) {
+                lastStart.setDirection(afterBreak ? ElementSpec.JoinNextDirection : ElementSpec.JoinFractureDirection);
+            }
+            var last = specs.get(specs.size() - 1);
+            if (last.getType() == ElementSpec.ContentType && last.getDirection() != ElementSpec.JoinPreviousDirection) {
+                if ((afterBreak || atRunEnd) && offset < documentLength) {
+                    // the inserted text ends where a run starts
+                    if (getCharacterElement(offset).getAttributes().isEqual(lastAttributes)) {
+                        last.setDirection(ElementSpec.JoinNextDirection);
+                    }
+                } else if (!afterBreak && !atRunEnd && lastStart != null && previousAttributes.isEqual(lastAttributes)) {
+                    // the rest of the split run follows the inserted text
+                    last.setDirection(ElementSpec.JoinNextDirection);
+                }
+            }
+
+            enableComplexLayout(text);
+            insert(offset, specs.toArray(new ElementSpec[0]));
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Turns on the support for bidirectional text and complex scripts if the text needs it, roughly like
+     * {@link #insertString} does. It is left to the caller by {@link #insert(int, ElementSpec[])}.
+     */
+    private void enableComplexLayout(char[] text) {
+        if (Boolean.TRUE.equals(getProperty(I18N_PROPERTY))) {
+            return;
+        }
+        var complex = TextAttribute.RUN_DIRECTION_RTL.equals(getProperty(TextAttribute.RUN_DIRECTION))
+                || Bidi.requiresBidi(text, 0, text.length);
+        for (int i = 0; i < text.length && !complex; i++) {
+            var c = text[i];
+            // combining diacritical marks, and the Indic, Thai, Tibetan, Myanmar, Hangul Jamo and Khmer scripts
+            complex = (c >= '\u0300' && c <= '\u036f') || (c >= '\u0900' && c <= '\u17ff')
+                    || c == '\u200c' || c == '\u200d';
+        }
+        if (complex) {
+            putProperty(I18N_PROPERTY, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Creates the spec of a run. {@link ElementSpec} copies the whole array it is given, so it gets
+     * only the characters of the run.
+     */
+    private static ElementSpec content(AttributeSet attributes, char[] text, int start, int end) {
+        return new ElementSpec(attributes, ElementSpec.ContentType, Arrays.copyOfRange(text, start, end), 0, end - start);
+    }
+
+    /**
+     * Changes the character attributes of a range one run at a time. The new attributes of each run
+     * are computed once from its current attributes, and the whole change is reported as a single
+     * {@link DocumentEvent} and a single undoable edit.
+     *
+     * @param offset    the start of the range
+     * @param length    the length of the range
+     * @param transform computes the new attributes of a run from its current attributes
+     */
+    void updateCharacterAttributes(int offset, int length, UnaryOperator<AttributeSet> transform) {
+        if (length <= 0) {
+            return;
+        }
+        try {
+            writeLock();
+            var changes = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.CHANGE);
+
+            // split the runs at the ends of the range
+            buffer.change(offset, length, changes);
+
+            int end;
+            for (int pos = offset; pos < offset + length; pos = end) {
+                var run = getCharacterElement(pos);
+                end = run.getEndOffset();
+                if (pos == end) {
+                    break;
+                }
+                var attributes = (MutableAttributeSet) run.getAttributes();
+                var newAttributes = AttributePool.getPool().intern(transform.apply(attributes.copyAttributes()));
+                changes.addEdit(new AttributeUndoableEdit(run, newAttributes, true));
+                attributes.removeAttributes(attributes);
+                attributes.addAttributes(newAttributes);
+            }
+            changes.end();
+            fireChangedUpdate(changes);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, changes));
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Checks which properties hold for every character in a range. The runs of the range are visited once
+     * through the element tree, checking all the properties on each run, and the walk stops as soon as
+     * none of the properties can hold any more.
+     *
+     * @param start  the start of the range
+     * @param end    the end of the range, exclusive
+     * @param checks the properties to be checked, like {@code StyleConstants::isBold}
+     * @return a {@link BitSet} in which bit i is set if checks[i] is true for every character in the range.
+     * Empty if the range is empty.
+     */
+    @SafeVarargs
+    final BitSet rangeHasAttributes(int start, int end, Predicate<AttributeSet>... checks) {
+        var result = new BitSet(checks.length);
+        if (start >= end) {
+            return result;
+        }
+        result.set(0, checks.length);
+        readLock();
+        try {
+            var root = getDefaultRootElement();
+            for (int p = root.getElementIndex(start); p < root.getElementCount(); p++) {
+                var paragraph = root.getElement(p);
+                if (paragraph.getStartOffset() >= end) {
+                    break;
+                }
+                for (int r = paragraph.getElementIndex(Math.max(start, paragraph.getStartOffset()));
+                     r < paragraph.getElementCount(); r++) {
+                    var run = paragraph.getElement(r);
+                    if (run.getStartOffset() >= end) {
+                        break;
+                    }
+                    var attributes = run.getAttributes();
+                    for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                        if (!checks[i].test(attributes)) {
+                            result.clear(i);
+                        }
+                    }
+                    if (result.isEmpty()) {
+                        return result;
+                    }
+                }
+            }
+        } finally {
+            readUnlock();
+        }
+        return result;
+    }
+
+    /**
+     * Copies a range with the attributes of its characters. The runs of the range are visited once through
+     * the element tree and their text is read through a single {@link Segment}, without copying each character.
+     *
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @return the text of the range and the runs of its attributes
+     * @throws BadLocationException if the range is not inside the document
+     */
+    StylizedText getStylizedText(int offset, int length) throws BadLocationException {
+        var builder = new StylizedText.Builder();
+        if (length <= 0) {
+            return builder.build();
+        }
+        readLock();
+        try {
+            var end = offset + length;
+            if (offset < 0 || end > getLength()) {
+                throw new BadLocationException("Range outside the document", offset < 0 ? offset : end);
+            }
+            var segment = new Segment();
+            segment.setPartialReturn(true);
+            var root = getDefaultRootElement();
+            for (int p = root.getElementIndex(offset); p < root.getElementCount(); p++) {
+                var paragraph = root.getElement(p);
+                if (paragraph.getStartOffset() >= end) {
+                    break;
+                }
+                for (int r = paragraph.getElementIndex(Math.max(offset, paragraph.getStartOffset()));
+                     r < paragraph.getElementCount(); r++) {
+                    var run = paragraph.getElement(r);
+                    if (run.getStartOffset() >= end) {
+                        break;
+                    }
+                    var attributes = run.getAttributes().copyAttributes();
+                    var position = Math.max(offset, run.getStartOffset());
+                    var runEnd = Math.min(end, run.getEndOffset());
+                    while (position < runEnd) {
+                        getText(position, runEnd - position, segment);
+                        builder.append(segment.array, segment.offset, segment.count, attributes);
+                        position += segment.count;
+                    }
+                }
+            }
+        } finally {
+            readUnlock();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Transforms the characters of a range, like converting them to upper case, keeping the attributes
+     * of each run. The range is read once, transformed with {@link TextTransform#apply(StylizedText)} and
+     * written back with a single removal and a single insertion of the transformed runs, as one undoable edit.
+     *
+     * @param offset    the start of the range
+     * @param length    the length of the range
+     * @param transform the transform
+     * @return the length of the transformed text
+     * @throws BadLocationException if the range is not inside the document
+     */
+    int transformRange(int offset, int length, TextTransform transform) throws BadLocationException {
+        beginCompoundEdit();
+        try {
+            var original = getStylizedText(offset, length);
+            var transformed = transform.apply(original);
+            if (transformed.getText().equals(original.getText())) {
+                return length;
+            }
+            remove(offset, length);
+            insertText(offset, transformed);
+            return transformed.getLength();
+        } finally {
+            endCompoundEdit();
+        }
+    }
+
+    /**
+     * Starts a group of changes which are made under a single write lock and reported to the
+     * {@link javax.swing.event.UndoableEditListener}s as one edit. Must be balanced by
+     * {@link #endCompoundEdit()} in a finally block. Groups can be nested.
+     */
+    void beginCompoundEdit() {
+        writeLock();
+        if (compoundEditDepth++ == 0) {
+            compoundEdit = new EditGroup();
+        }
+    }
+
+    /**
+     * Ends a group of changes started by {@link #beginCompoundEdit()}, reporting the group once the
+     * outermost group ends.
+     */
+    void endCompoundEdit() {
+        try {
+            if (--compoundEditDepth == 0) {
+                var edit = compoundEdit;
+                compoundEdit = null;
+                edit.end();
+                if (edit.isSignificant()) {
+                    super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+                }
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (compoundEdit != null) {
+            compoundEdit.addEdit(e.getEdit());
+        } else {
+            super.fireUndoableEditUpdate(e);
+        }
+    }
+
+    /**
+     * Replaces several ranges with strings, as a single undoable edit.
+     * Each character of a replacement gets the attributes of the character it replaces,
+     * the characters beyond the length of the range get the attributes of its last character,
+     * and the text inserted at an empty range gets the attributes of the run holding its offset.
+     * <p>
+     * Instead of editing each range separately, the new text of every run of equally formatted characters
+     * is computed first, and each affected run is then rewritten with a single removal and insertion,
+     * from the last to the first. The number of document changes depends on the number of runs holding
+     * the ranges, not on the number of ranges.
+     *
+     * @param starts       the start offsets of the ranges in increasing order, the ranges must not overlap
+     * @param ends         the end offsets of the ranges, exclusive
+     * @param replacements the text to be inserted in place of each range
+     * @param count        the number of ranges to be used
+     * @throws BadLocationException if a range is not inside the document
+     */
+    void replaceRanges(int[] starts, int[] ends, String[] replacements, int count) throws BadLocationException {
+        if (count == 0) {
+            return;
+        }
+        beginCompoundEdit();
+        try {
+            var regionStarts = new ArrayList<Integer>();
+            var regionEnds = new ArrayList<Integer>();
+            var regionTexts = new ArrayList<String>();
+            var regionAttributes = new ArrayList<AttributeSet>();
+            var segment = new Segment();
+
+            var match = 0;
+            for (int runStart = starts[0]; ; ) {
+                var run = getCharacterElement(runStart);
+                runStart = Math.max(runStart, run.getStartOffset());
+                var runEnd = run.getEndOffset();
+
+                // the part of the run from the first to the last range overlapping it
+                var regionStart = Math.max(runStart, starts[match]);
+                var text = new StringBuilder();
+                var position = regionStart;
+                while (match < count && starts[match] < runEnd) {
+                    var start = starts[match];
+                    var end = ends[match];
+                    var replacement = replacements[match];
+                    if (start > position) {
+                        getText(position, start - position, segment);
+                        text.append(segment.array, segment.offset, segment.count);
+                    }
+                    // the replacement characters mapped to the characters of the range inside this run
+                    var from = Math.min(Math.max(start, runStart) - start, replacement.length());
+                    var to = end <= runEnd ? replacement.length() : Math.min(runEnd - start, replacement.length());
+                    text.append(replacement, from, Math.max(from, to));
+                    position = Math.min(end, runEnd);
+                    if (end > runEnd) {
+                        break; // the range continues in the next run
+                    }
+                    match++;
+                }
+                if (position > regionStart || text.length() > 0) {
+                    regionStarts.add(regionStart);
+                    regionEnds.add(position);
+                    regionTexts.add(text.toString());
+                    regionAttributes.add(run.getAttributes().copyAttributes());
+                }
+                if (match >= count) {
+                    break;
+                }
+                runStart = Math.max(runEnd, starts[match]);
+            }
+
+            for (int i = regionStarts.size() - 1; i >= 0; i--) {
+                int start = regionStarts.get(i);
+                remove(start, regionEnds.get(i) - start);
+                if (!regionTexts.get(i).isEmpty()) {
+                    insertString(start, regionTexts.get(i), regionAttributes.get(i));
+                }
+            }
+        } finally {
+            endCompoundEdit();
+        }
+    }
+
+    /**
+     * The changes made between {@link #beginCompoundEdit()} and {@link #endCompoundEdit()}, reported as one edit
+     */
+    static final class EditGroup extends CompoundEdit {
+        /**
+         * Returns the edits of the group
+         *
+         * @return the edits, in the order in which they were made
+         */
+        List<UndoableEdit> getEdits() {
+            return Collections.unmodifiableList(edits);
+        }
+    }
+}
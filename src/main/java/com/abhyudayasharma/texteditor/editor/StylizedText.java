@@ -0,0 +1,135 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+import java.util.Arrays;
+
+/**
+ * A piece of formatted text, stored as its plain text and the runs of equally formatted characters in it.
+ * Instances are immutable.
+ */
+final class StylizedText {
+    /**
+     * Text without any characters
+     */
+    static final StylizedText EMPTY = new StylizedText("", new int[0], new AttributeSet[0]);
+
+    private final String text;
+    private final int[] runLengths;
+    private final AttributeSet[] runAttributes;
+
+    private StylizedText(String text, int[] runLengths, AttributeSet[] runAttributes) {
+        this.text = text;
+        this.runLengths = runLengths;
+        this.runAttributes = runAttributes;
+    }
+
+    /**
+     * @return the plain text
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return the number of characters
+     */
+    int getLength() {
+        return text.length();
+    }
+
+    /**
+     * @return the number of runs of equally formatted characters
+     */
+    int getRunCount() {
+        return runLengths.length;
+    }
+
+    /**
+     * @param run the index of a run
+     * @return the number of characters in the run
+     */
+    int getRunLength(int run) {
+        return runLengths[run];
+    }
+
+    /**
+     * @param run the index of a run
+     * @return the character attributes of the run
+     */
+    AttributeSet getRunAttributes(int run) {
+        return runAttributes[run];
+    }
+
+    /**
+     * Builds a {@link StylizedText} from pieces of text appended in order. Consecutive pieces with equal
+     * attributes are joined into a single run.
+     */
+    static final class Builder {
+        private final StringBuilder text = new StringBuilder();
+        private int[] runLengths = new int[8];
+        private AttributeSet[] runAttributes = new AttributeSet[8];
+        private int runCount;
+
+        /**
+         * Appends characters with the same attributes
+         *
+         * @param chars      the array holding the characters
+         * @param offset     the index of the first character in the array
+         * @param length     the number of characters
+         * @param attributes the attributes of the characters, which must not be changed afterwards
+         * @return this builder
+         */
+        Builder append(char[] chars, int offset, int length, AttributeSet attributes) {
+            if (length <= 0) {
+                return this;
+            }
+            text.append(chars, offset, length);
+            addRun(length, attributes);
+            return this;
+        }
+
+        /**
+         * Appends characters with the same attributes
+         *
+         * @param chars      the characters
+         * @param attributes the attributes of the characters, which must not be changed afterwards
+         * @return this builder
+         */
+        Builder append(CharSequence chars, AttributeSet attributes) {
+            if (chars.length() == 0) {
+                return this;
+            }
+            text.append(chars);
+            addRun(chars.length(), attributes);
+            return this;
+        }
+
+        private void addRun(int length, AttributeSet attributes) {
+            if (runCount > 0) {
+                var last = runAttributes[runCount - 1];
+                if (last == attributes || last.isEqual(attributes)) {
+                    runLengths[runCount - 1] += length;
+                    return;
+                }
+            }
+            if (runCount == runLengths.length) {
+                runLengths = Arrays.copyOf(runLengths, runCount * 2);
+                runAttributes = Arrays.copyOf(runAttributes, runCount * 2);
+            }
+            runLengths[runCount] = length;
+            runAttributes[runCount] = attributes;
+            runCount++;
+        }
+
+        /**
+         * @return the text appended so far
+         */
+        StylizedText build() {
+            if (runCount == 0) {
+                return EMPTY;
+            }
+            return new StylizedText(text.toString(), Arrays.copyOf(runLengths, runCount),
+                    Arrays.copyOf(runAttributes, runCount));
+        }
+    }
+}
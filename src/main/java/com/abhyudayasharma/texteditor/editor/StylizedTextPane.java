@@ -1,15 +1,18 @@
 package com.abhyudayasharma.texteditor.editor;
 
 import javax.swing.*;
-import javax.swing.text.AttributeSet;
+import javax.swing.text.AbstractDocument;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.EditorKit;
+import javax.swing.text.StyledEditorKit;
+import javax.swing.text.ViewFactory;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * A {@link JTextPane} that uses a {@link javax.swing.text.StyledDocument} to store formatted text.
@@ -25,12 +28,48 @@ class StylizedTextPane extends JTextPane {
         getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK), "Nothing");
     }
 
+    /**
+     * Use a {@link StylizedDocument} instead of a {@link javax.swing.text.DefaultStyledDocument},
+     * and a {@link VirtualSectionView} to lay out only the paragraphs which are shown.
+     *
+     * @return an editor kit creating {@link StylizedDocument}s
+     */
+    @Override
+    protected EditorKit createDefaultEditorKit() {
+        return new StyledEditorKit() {
+            private final ViewFactory styledFactory = super.getViewFactory();
+            private final ViewFactory factory = element ->
+                    AbstractDocument.SectionElementName.equals(element.getName())
+                            ? new VirtualSectionView(element) : styledFactory.create(element);
+
+            @Override
+            public Document createDefaultDocument() {
+                return new StylizedDocument();
+            }
+
+            @Override
+            public ViewFactory getViewFactory() {
+                return factory;
+            }
+        };
+    }
+
+    /**
+     * Returns the document being edited, which is always created by {@link #createDefaultEditorKit()}
+     * or set by the {@link Editor} as a {@link StylizedDocument}.
+     *
+     * @return the document
+     */
+    StylizedDocument getStylizedDocument() {
+        return (StylizedDocument) getDocument();
+    }
+
     /**
      * Cut the contents into the clipboard
      */
     @Override
     public void cut() {
-        clipboard.setContents(getSelectionAsList(true));
+        clipboard.setContents(getSelectionContents(true));
     }
 
     /**
@@ -38,88 +77,68 @@ class StylizedTextPane extends JTextPane {
      */
     @Override
     public void copy() {
-        clipboard.setContents(getSelectionAsList(false));
+        clipboard.setContents(getSelectionContents(false));
     }
 
     /**
-     * Paste the contents of the clipboard into {@link StylizedTextPane}
+     * Paste the contents of the clipboard into {@link StylizedTextPane}.
+     * Formatted text is inserted with its attributes in one step, and the whole paste is a single undoable edit.
+     * The system clipboard is read only when it holds text from another application or component.
      */
     @Override
     public void paste() {
-        var document = getStyledDocument();
+        var document = getStylizedDocument();
         var selectionStart = getSelectionStart();
         var selectionEnd = getSelectionEnd();
         var selectionLength = selectionEnd - selectionStart;
-        var systemClipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        var sysClipboardData = "";
 
-        try {
-            sysClipboardData = systemClipboard.getData(DataFlavor.stringFlavor).toString();
-        } catch (UnsupportedFlavorException | IOException e) {
-            e.printStackTrace();
+        var contents = clipboard.getContents();
+        var plainText = "";
+        if (!clipboard.isOwner()) {
+            try {
+                var systemClipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+                if (systemClipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
+                    // the document only holds '\n' line breaks, like imported text
+                    plainText = PlainTextFormat.normalizeLineBreaks(
+                            systemClipboard.getData(DataFlavor.stringFlavor).toString());
+                }
+            } catch (UnsupportedFlavorException | IOException | IllegalStateException e) {
+                e.printStackTrace();
+            }
         }
 
-        var string = clipboard.getContentsAsString();
-
+        document.beginCompoundEdit();
         try {
             document.remove(selectionStart, selectionLength);
-            var newChars = clipboard.getContents();
-            if (sysClipboardData.equals(string) && !string.isEmpty()) {
-                document.insertString(selectionStart, string, null);
-                for (int i = 0; i < string.length(); i++) {
-                    document.setCharacterAttributes(i + selectionStart, 1,
-                            newChars.get(i).attributes, true);
-                }
-            } else if (!sysClipboardData.isEmpty()) {
-                document.insertString(selectionStart, sysClipboardData, null);
+            if (contents.getLength() > 0) {
+                document.insertText(selectionStart, contents);
+            } else if (!plainText.isEmpty()) {
+                document.insertString(selectionStart, plainText, null);
             }
         } catch (BadLocationException ignore) {
+        } finally {
+            document.endCompoundEdit();
         }
     }
 
     /**
-     * Get the contents of the current selection characters with their respective
-     * attributes in an {@link ArrayList}.
+     * Get the characters of the current selection with the runs of their attributes.
      *
      * @param deleteSelection delete the current selection if true, do not change the selection otherwise.
-     * @return array list containing the characters and their attributes, indexed relative to selection start.
+     * @return the text of the selection and its attributes
      */
-    private ArrayList<StylizedClipboard.StylizedCharacter> getSelectionAsList(boolean deleteSelection) {
+    private StylizedText getSelectionContents(boolean deleteSelection) {
         var selectionStart = getSelectionStart();
         var selectionEnd = getSelectionEnd();
-        var document = getStyledDocument();
-        ArrayList<StylizedClipboard.StylizedCharacter> list = new ArrayList<>();
+        var document = getStylizedDocument();
+        var contents = StylizedText.EMPTY;
         try {
-            for (int i = selectionStart; i < selectionEnd; i++) {
-                char c = document.getText(i, 1).charAt(0);
-                AttributeSet set = document.getCharacterElement(i).getAttributes();
-                list.add(new StylizedClipboard.StylizedCharacter(c, set));
-            }
+            contents = document.getStylizedText(selectionStart, selectionEnd - selectionStart);
             if (deleteSelection) {
                 document.remove(selectionStart, selectionEnd - selectionStart);
             }
         } catch (BadLocationException ignore) {
         }
-        return list;
-    }
-
-    /**
-     * Override adding '\r\n' on Windows to have a consistent text length and selectionStart and selectionEnd indices.
-     *
-     * @return the entire text contained in the {@link StylizedTextPane}
-     */
-    @Override
-    public String getText() {
-        return super.getText().replaceAll("\r\n", "\n");
-    }
-
-    /**
-     * Have consistent LF line breaks on all platforms
-     *
-     * @return the selected text
-     */
-    @Override
-    public String getSelectedText() {
-        return super.getSelectedText().replaceAll("\r\n", "\n");
+        return contents;
     }
 }
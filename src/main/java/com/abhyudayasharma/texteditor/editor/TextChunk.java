@@ -0,0 +1,32 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.AttributeSet;
+
+/**
+ * A piece of a document loaded by a {@link ChunkSource}: its text and the runs of its character attributes.
+ */
+final class TextChunk {
+    final int index;
+    final long start;
+    final char[] text;
+    final int[] runLengths;
+    final AttributeSet[] runAttributes;
+    final int runCount;
+
+    /**
+     * @param index         the index of the chunk in its source
+     * @param start         the offset of the first character of the chunk in the document
+     * @param text          the text
+     * @param runLengths    the number of characters in each run, adding up to the length of the text
+     * @param runAttributes the character attributes of each run
+     * @param runCount      the number of runs
+     */
+    TextChunk(int index, long start, char[] text, int[] runLengths, AttributeSet[] runAttributes, int runCount) {
+        this.index = index;
+        this.start = start;
+        this.text = text;
+        this.runLengths = runLengths;
+        this.runAttributes = runAttributes;
+        this.runCount = runCount;
+    }
+}
@@ -0,0 +1,314 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.stream.IntStream;
+
+/**
+ * The word, character, line and sentence counts of a range of a document, shown by
+ * {@link Editor#showStatistics()}. Unlike {@link DocumentStatistics}, which keeps the word count up to date
+ * while typing, the report is counted on demand.
+ * <p>
+ * The range is split into pieces of {@link #PIECE_SIZE} characters, which are counted in parallel on the common
+ * {@link java.util.concurrent.ForkJoinPool}, each read through its own {@link Segment} without copying the text.
+ * A word or a sentence may span two pieces, so each piece also tells how it starts and ends, and the counts of
+ * neighbouring pieces are stitched together when they are combined.
+ * <p>
+ * Words are separated by the {@link DocumentStatistics#WORD_DELIMITERS}, as in the live count. A sentence is
+ * made of letters or digits and ends with '.', '!', '?' or '…', possibly followed by closing quotes or brackets,
+ * then whitespace or the end of the text, so "3.14" and "e.g., this" do not end one. Text left at the end
+ * without a terminator is a sentence too.
+ */
+final class TextReport {
+    /**
+     * The number of characters counted at once by a worker
+     */
+    static final int PIECE_SIZE = 1 << 20;
+
+    // the states of the sentence counter, and the flag added to a state when a sentence ends on a character
+    private static final int IDLE = 0;
+    private static final int CONTENT = 1;
+    private static final int TERMINATED = 2;
+    private static final int ENDED = 4;
+
+    // the kinds of characters for the sentence counter
+    private static final int WORD = 0;
+    private static final int TERMINATOR = 1;
+    private static final int CLOSING = 2;
+    private static final int SPACE = 3;
+    private static final int OTHER = 4;
+    private static final int KINDS = 5;
+    private static final int KIND_MASK = 7;
+
+    // flags added to the kind of a character
+    private static final int DELIMITER = 8;
+    private static final int WHITESPACE = 16;
+
+    /**
+     * The kind and the flags of the Latin-1 characters, the others are classified as they come
+     */
+    private static final byte[] LATIN_1 = new byte[256];
+
+    /**
+     * The next state of the sentence counter, indexed by the state times {@link #KINDS} plus the kind of the
+     * character
+     */
+    private static final int[] TRANSITIONS = {
+            // IDLE
+            CONTENT, IDLE, IDLE, IDLE, IDLE,
+            // CONTENT
+            CONTENT, TERMINATED, CONTENT, CONTENT, CONTENT,
+            // TERMINATED, which goes back to CONTENT if a terminator is not followed by whitespace
+            CONTENT, TERMINATED, TERMINATED, IDLE | ENDED, CONTENT,
+    };
+
+    static {
+        for (int c = 0; c < LATIN_1.length; c++) {
+            LATIN_1[c] = (byte) classify((char) c);
+        }
+    }
+
+    private final int characters;
+    private final int nonWhitespaceCharacters;
+    private final int words;
+    private final int lines;
+    private final int sentences;
+
+    private TextReport(Piece piece) {
+        characters = piece.length;
+        nonWhitespaceCharacters = piece.nonWhitespace;
+        words = piece.words;
+        lines = piece.length == 0 ? 0 : piece.lineBreaks + 1;
+        sentences = piece.sentences[IDLE] + (piece.endStates[IDLE] != IDLE ? 1 : 0);
+    }
+
+    /**
+     * Counts a range of a document. The caller should hold a read lock on the document, which is read by other
+     * threads while this method runs.
+     *
+     * @param document the document
+     * @param start    the start offset, inclusive
+     * @param end      the end offset, exclusive
+     * @return the counts of the range
+     * @throws BadLocationException if the range is not inside the document
+     */
+    static TextReport count(Document document, int start, int end) throws BadLocationException {
+        if (start < 0 || end < start || end > document.getLength()) {
+            throw new BadLocationException("Invalid range", start < 0 ? start : end);
+        }
+        var pieces = (int) (((long) end - start + PIECE_SIZE - 1) / PIECE_SIZE);
+        var range = IntStream.range(0, pieces);
+        if (pieces > 1) {
+            range = range.parallel();
+        }
+        // the reduction of an ordered stream combines neighbouring pieces in order
+        var total = range.mapToObj(i -> Piece.count(document, start + i * PIECE_SIZE,
+                (int) Math.min(end, start + (long) (i + 1) * PIECE_SIZE)))
+                .reduce(new Piece(0), Piece::followedBy);
+        return new TextReport(total);
+    }
+
+    /**
+     * Returns the number of characters
+     *
+     * @return the length of the range
+     */
+    int getCharacters() {
+        return characters;
+    }
+
+    /**
+     * Returns the number of characters other than whitespace
+     *
+     * @return the number of characters without spaces, tabs and line breaks
+     */
+    int getNonWhitespaceCharacters() {
+        return nonWhitespaceCharacters;
+    }
+
+    /**
+     * Returns the number of words
+     *
+     * @return the number of words
+     */
+    int getWords() {
+        return words;
+    }
+
+    /**
+     * Returns the number of lines, as separated by line breaks
+     *
+     * @return the number of lines, 0 if the range is empty
+     */
+    int getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of sentences
+     *
+     * @return the number of sentences
+     */
+    int getSentences() {
+        return sentences;
+    }
+
+    /**
+     * Returns the kind of a character for the sentence counter, with the {@link #DELIMITER} and
+     * {@link #WHITESPACE} flags
+     */
+    private static int classify(char c) {
+        var flags = (DocumentStatistics.isDelimiter(c) ? DELIMITER : 0)
+                | (Character.isWhitespace(c) ? WHITESPACE : 0);
+        if (Character.isLetterOrDigit(c)) {
+            return flags | WORD;
+        }
+        switch (c) {
+            case '.':
+            case '!':
+            case '?':
+            case '…':
+                return flags | TERMINATOR;
+            case '"':
+            case '\'':
+            case ')':
+            case ']':
+            case '»':
+            case '’':
+            case '”':
+                return flags | CLOSING;
+            default:
+                return flags | ((flags & WHITESPACE) != 0 ? SPACE : OTHER);
+        }
+    }
+
+    /**
+     * The counts of a piece of the range. The sentences are counted from each state the counter may be in when
+     * the piece starts, since that depends on the pieces before it.
+     */
+    private static final class Piece {
+        private final int length;
+        private int nonWhitespace;
+        private int words;
+        private int lineBreaks;
+        private boolean startsInWord;
+        private boolean endsInWord;
+        // indexed by the state at the start of the piece
+        private final int[] sentences = new int[3];
+        private final int[] endStates = {IDLE, CONTENT, TERMINATED};
+
+        private Piece(int length) {
+            this.length = length;
+        }
+
+        /**
+         * Counts a piece of a document
+         */
+        static Piece count(Document document, int start, int end) {
+            var piece = new Piece(end - start);
+            var segment = new Segment();
+            segment.setPartialReturn(true);
+            var states = piece.endStates;
+            // the counters started from different states agree after a few characters, only one is run then
+            var converged = false;
+            var state = IDLE;
+            var shared = 0;
+            var words = 0;
+            var lineBreaks = 0;
+            var whitespace = 0;
+            var inWord = false;
+            try {
+                for (int offset = start; offset < end; offset += segment.count) {
+                    document.getText(offset, end - offset, segment);
+                    var array = segment.array;
+                    for (int i = segment.offset, limit = segment.offset + segment.count; i < limit; i++) {
+                        var c = array[i];
+                        int kind = c < LATIN_1.length ? LATIN_1[c] : classify(c);
+                        if ((kind & DELIMITER) == 0) {
+                            if (!inWord) {
+                                words++;
+                            }
+                            inWord = true;
+                        } else {
+                            inWord = false;
+                        }
+                        if (c == '\n') {
+                            lineBreaks++;
+                        }
+                        if ((kind & WHITESPACE) != 0) {
+                            whitespace++;
+                        }
+
+                        kind &= KIND_MASK;
+                        if (converged) {
+                            // most characters belong to a word, which does not depend on the previous state
+                            if (kind == WORD) {
+                                state = CONTENT;
+                            } else {
+                                var next = TRANSITIONS[state * KINDS + kind];
+                                shared += next >> 2;
+                                state = next & 3;
+                            }
+                        } else {
+                            for (int s = 0; s < states.length; s++) {
+                                var next = TRANSITIONS[states[s] * KINDS + kind];
+                                piece.sentences[s] += next >> 2;
+                                states[s] = next & 3;
+                            }
+                            converged = states[IDLE] == states[CONTENT] && states[CONTENT] == states[TERMINATED];
+                            state = states[IDLE];
+                        }
+                    }
+                }
+            } catch (BadLocationException e) {
+                // the range was checked, and the document cannot change while it is counted
+                throw new IllegalStateException(e);
+            }
+            if (converged) {
+                for (int s = 0; s < states.length; s++) {
+                    piece.sentences[s] += shared;
+                    states[s] = state;
+                }
+            }
+            piece.words = words;
+            piece.lineBreaks = lineBreaks;
+            piece.nonWhitespace = piece.length - whitespace;
+            piece.startsInWord = piece.length > 0 && !DocumentStatistics.isDelimiter(charAt(document, start));
+            piece.endsInWord = inWord;
+            return piece;
+        }
+
+        private static char charAt(Document document, int offset) {
+            var segment = new Segment();
+            try {
+                document.getText(offset, 1, segment);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            return segment.array[segment.offset];
+        }
+
+        /**
+         * Combines the counts of this piece with the piece which follows it
+         *
+         * @param next the next piece
+         * @return the counts of both pieces
+         */
+        Piece followedBy(Piece next) {
+            var piece = new Piece(length + next.length);
+            piece.nonWhitespace = nonWhitespace + next.nonWhitespace;
+            piece.lineBreaks = lineBreaks + next.lineBreaks;
+            // a word across the boundary was counted by both pieces
+            piece.words = words + next.words - (endsInWord && next.startsInWord ? 1 : 0);
+            piece.startsInWord = length > 0 ? startsInWord : next.startsInWord;
+            piece.endsInWord = next.length > 0 ? next.endsInWord : endsInWord;
+            for (int s = 0; s < endStates.length; s++) {
+                var middle = endStates[s];
+                piece.sentences[s] = sentences[s] + next.sentences[middle];
+                piece.endStates[s] = next.endStates[middle];
+            }
+            return piece;
+        }
+    }
+}
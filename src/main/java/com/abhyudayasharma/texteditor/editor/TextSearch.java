@@ -0,0 +1,100 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.Document;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A search for a literal string or a regular expression in the text of a document.
+ * Searches read the text through a {@link CharSequence}, usually a {@link DocumentCharSequence},
+ * and remember the end of the last match found.
+ */
+interface TextSearch {
+    /**
+     * Creates a search
+     *
+     * @param pattern           the string or regular expression to be found
+     * @param caseSensitive     find text ignoring case if false
+     * @param regularExpression treat the pattern as a {@link java.util.regex.Pattern} if true
+     * @return a {@link RegexSearch} or a {@link DocumentSearch}
+     * @throws PatternSyntaxException if the regular expression is invalid
+     */
+    static TextSearch create(String pattern, boolean caseSensitive, boolean regularExpression) {
+        return regularExpression ? new RegexSearch(pattern, caseSensitive) : new DocumentSearch(pattern, caseSensitive);
+    }
+
+    /**
+     * Returns the string or the regular expression being searched for
+     *
+     * @return the pattern
+     */
+    String getPattern();
+
+    /**
+     * Returns whether the search matches case
+     *
+     * @return false if the case is ignored
+     */
+    boolean isCaseSensitive();
+
+    /**
+     * Returns whether the pattern is a regular expression
+     *
+     * @return true for a regular expression, false for a literal string
+     */
+    boolean isRegularExpression();
+
+    /**
+     * Finds the first match starting at or after an index
+     *
+     * @param text the text to be searched
+     * @param from the index to start searching from
+     * @return the index of the match, or -1 if there is none
+     */
+    int findNext(CharSequence text, int from);
+
+    /**
+     * Finds the last match ending at or before an index
+     *
+     * @param text   the text to be searched
+     * @param before the index at which the match must end at the latest
+     * @return the index of the match, or -1 if there is none
+     */
+    int findPrevious(CharSequence text, int before);
+
+    /**
+     * Returns the end of the last match found
+     *
+     * @return the index after the last character of the match
+     */
+    int getMatchEnd();
+
+    /**
+     * Returns the text which replaces the last match found
+     *
+     * @param replacement the replacement entered by the user, which may refer to groups of a regular expression
+     * @return the text to be inserted in place of the match
+     */
+    String getReplacement(String replacement);
+
+    /**
+     * Finds the first match starting at or after an offset. The caller must hold a read lock on the document.
+     *
+     * @param document the document to be searched
+     * @param from     the offset to start searching from
+     * @return the offset of the match, or -1 if there is none
+     */
+    default int findNext(Document document, int from) {
+        return findNext(new DocumentCharSequence(document), from);
+    }
+
+    /**
+     * Finds the last match ending at or before an offset. The caller must hold a read lock on the document.
+     *
+     * @param document the document to be searched
+     * @param before   the offset at which the match must end at the latest
+     * @return the offset of the match, or -1 if there is none
+     */
+    default int findPrevious(Document document, int before) {
+        return findPrevious(new DocumentCharSequence(document), before);
+    }
+}
@@ -0,0 +1,55 @@
+package com.abhyudayasharma.texteditor.editor;
+
+/**
+ * An immutable snapshot of the word and character counts of an {@link Editor},
+ * pushed to the listeners registered with {@link Editor#addStatisticsListener}.
+ */
+public final class TextStatistics {
+    private final int wordCount;
+    private final int charCount;
+    private final int selectedWordCount;
+    private final int selectedCharCount;
+
+    TextStatistics(int wordCount, int charCount, int selectedWordCount, int selectedCharCount) {
+        this.wordCount = wordCount;
+        this.charCount = charCount;
+        this.selectedWordCount = selectedWordCount;
+        this.selectedCharCount = selectedCharCount;
+    }
+
+    /**
+     * Returns the total number of words in the document
+     *
+     * @return the number of words
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns the total number of characters in the document
+     *
+     * @return the number of characters
+     */
+    public int getCharCount() {
+        return charCount;
+    }
+
+    /**
+     * Returns the number of words in the selection
+     *
+     * @return the number of selected words, 0 if nothing is selected
+     */
+    public int getSelectedWordCount() {
+        return selectedWordCount;
+    }
+
+    /**
+     * Returns the number of characters in the selection
+     *
+     * @return the number of selected characters, 0 if nothing is selected
+     */
+    public int getSelectedCharCount() {
+        return selectedCharCount;
+    }
+}
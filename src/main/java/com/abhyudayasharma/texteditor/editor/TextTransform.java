@@ -0,0 +1,172 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * A change to the characters of a text which keeps their formatting, like converting them to upper case.
+ * A formatted text is transformed one run at a time, so each run keeps its attributes even if its length changes.
+ * Long runs are split into pieces at whitespace, and the pieces of a large text are transformed in parallel
+ * on the common {@link java.util.concurrent.ForkJoinPool}.
+ */
+@FunctionalInterface
+interface TextTransform {
+    /**
+     * The maximum length of a piece transformed at once
+     */
+    int PIECE_SIZE = 1 << 16;
+
+    /**
+     * The length from which the pieces of a text are transformed in parallel
+     */
+    int PARALLEL_THRESHOLD = 1 << 18;
+
+    /**
+     * The length of the parts of a piece converted at once by {@link String#toUpperCase} and
+     * {@link String#toLowerCase}, which grow their result one character at a time for each character which
+     * maps to several, like 'ß' to "SS", and take a time quadratic in the length of the text for such text
+     */
+    int CASE_MAPPING_SIZE = 256;
+
+    TextTransform UPPER_CASE = (text, previous) -> mapCase(text, true);
+    TextTransform LOWER_CASE = (text, previous) -> mapCase(text, false);
+    TextTransform TITLE_CASE = TextTransform::toTitleCase;
+    TextTransform TOGGLE_CASE = TextTransform::toggleCase;
+    TextTransform NORMALIZE = (text, previous) -> Normalizer.normalize(text, Normalizer.Form.NFC);
+
+    /**
+     * Transforms a piece of text
+     *
+     * @param text     the text
+     * @param previous the code point before the text, or -1 at the start of the transformed text
+     * @return the transformed text
+     */
+    String apply(String text, int previous);
+
+    /**
+     * Transforms a formatted text
+     *
+     * @param text the text
+     * @return the transformed text, with the attributes of each run kept on what the run became
+     */
+    default StylizedText apply(StylizedText text) {
+        var string = text.getText();
+        var starts = new ArrayList<Integer>();
+        var runs = new ArrayList<Integer>();
+        var offset = 0;
+        for (int run = 0; run < text.getRunCount(); run++) {
+            var end = offset + text.getRunLength(run);
+            while (offset < end) {
+                starts.add(offset);
+                runs.add(run);
+                offset = pieceEnd(string, offset, end, PIECE_SIZE);
+            }
+        }
+        starts.add(offset);
+
+        var pieces = new String[runs.size()];
+        var range = IntStream.range(0, pieces.length);
+        if (string.length() >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> {
+            int start = starts.get(i);
+            pieces[i] = apply(string.substring(start, starts.get(i + 1)), start == 0 ? -1 : string.codePointBefore(start));
+        });
+
+        var builder = new StylizedText.Builder();
+        for (int i = 0; i < pieces.length; i++) {
+            builder.append(pieces[i], text.getRunAttributes(runs.get(i)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Finds the end of a piece of a text, after the last whitespace within a number of characters,
+     * or otherwise at a place which does not split a character from its combining marks or a surrogate pair.
+     */
+    private static int pieceEnd(String text, int start, int end, int size) {
+        if (end - start <= size) {
+            return end;
+        }
+        var limit = start + size;
+        for (int i = limit; i > start + size / 2; i--) {
+            if (Character.isWhitespace(text.charAt(i - 1))) {
+                return i;
+            }
+        }
+        for (int i = limit; i > start + 1; i--) {
+            var c = text.charAt(i);
+            var type = Character.getType(c);
+            if (!Character.isLowSurrogate(c) && type != Character.NON_SPACING_MARK
+                    && type != Character.ENCLOSING_MARK && type != Character.COMBINING_SPACING_MARK) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Converts a text to upper or lower case in parts of at most {@link #CASE_MAPPING_SIZE} characters,
+     * ending at whitespace when possible so that the words keep the context used by the conversion
+     */
+    private static String mapCase(String text, boolean upperCase) {
+        if (text.length() <= CASE_MAPPING_SIZE) {
+            return upperCase ? text.toUpperCase(Locale.US) : text.toLowerCase(Locale.US);
+        }
+        var result = new StringBuilder(text.length() + 16);
+        for (int start = 0; start < text.length(); ) {
+            var end = pieceEnd(text, start, text.length(), CASE_MAPPING_SIZE);
+            var part = text.substring(start, end);
+            result.append(upperCase ? part.toUpperCase(Locale.US) : part.toLowerCase(Locale.US));
+            start = end;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Converts the first letter of each word to title case and the other letters to lower case.
+     * Apostrophes between letters do not start a new word.
+     */
+    private static String toTitleCase(String text, int previous) {
+        var result = new StringBuilder(text.length());
+        var inWord = previous >= 0 && (Character.isLetterOrDigit(previous) || isApostrophe(previous));
+        for (int i = 0; i < text.length(); ) {
+            var c = text.codePointAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                result.appendCodePoint(inWord ? Character.toLowerCase(c) : Character.toTitleCase(c));
+                inWord = true;
+            } else {
+                result.appendCodePoint(c);
+                inWord = inWord && isApostrophe(c);
+            }
+            i += Character.charCount(c);
+        }
+        return result.toString();
+    }
+
+    private static boolean isApostrophe(int c) {
+        return c == '\'' || c == '\u2019';
+    }
+
+    /**
+     * Converts upper and title case letters to lower case, and lower case letters to upper case
+     */
+    private static String toggleCase(String text, int previous) {
+        var result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); ) {
+            var c = text.codePointAt(i);
+            if (Character.isUpperCase(c) || Character.isTitleCase(c)) {
+                result.appendCodePoint(Character.toLowerCase(c));
+            } else if (Character.isLowerCase(c)) {
+                result.appendCodePoint(Character.toUpperCase(c));
+            } else {
+                result.appendCodePoint(c);
+            }
+            i += Character.charCount(c);
+        }
+        return result.toString();
+    }
+}
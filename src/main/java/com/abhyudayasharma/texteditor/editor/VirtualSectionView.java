@@ -0,0 +1,327 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.text.CompositeView;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * The view of the paragraphs of a document, stacked from top to bottom, which only lays out the paragraphs
+ * that are shown.
+ * <p>
+ * A {@link javax.swing.text.BoxView} lays out every paragraph whenever its width changes, and in the no-wrap
+ * {@link Editor} the width changes whenever the longest line does. This view keeps the height and the width of
+ * each paragraph, and lays out a paragraph only when it is painted, its position is asked for, or it changes.
+ * Paragraphs which were never laid out are given the height of a line of the default font. The paragraph at
+ * a vertical position is found with a Fenwick tree of the heights, so painting, scrolling and typing take the
+ * same time whatever the number of paragraphs.
+ * <p>
+ * The preferred width is the width of the widest paragraph laid out so far. It grows as wider paragraphs are
+ * scrolled into view.
+ */
+final class VirtualSectionView extends CompositeView {
+    /**
+     * The distance above and below the painted area in which the paragraphs are laid out ahead, in pixels
+     */
+    private static final int MARGIN = 512;
+
+    private static final int DEFAULT_HEIGHT = 16;
+
+    private int count;
+    private int[] heights = new int[0];
+    private int[] widths = new int[0];
+    // the width at which each paragraph was laid out, -1 if it must be laid out again
+    private int[] layoutWidths = new int[0];
+    // Fenwick tree of the heights, tree[i] holds the sum of the heights of the paragraphs (i - (i & -i), i]
+    private int[] tree = new int[1];
+
+    private final HashSet<View> changed = new HashSet<>();
+    private int width;
+    private int maxWidth;
+    private boolean maxWidthValid = true;
+    private int estimatedHeight;
+    private boolean measuring;
+    private boolean widthChanged;
+    private boolean heightChanged;
+
+    /**
+     * @param element the section element of the document
+     */
+    VirtualSectionView(Element element) {
+        super(element);
+    }
+
+    @Override
+    public void replace(int offset, int length, View[] views) {
+        super.replace(offset, length, views);
+        var added = views == null ? 0 : views.length;
+        var newCount = count - length + added;
+        for (int i = offset; i < offset + length; i++) {
+            if (widths[i] > 0 && widths[i] >= maxWidth) {
+                maxWidthValid = false;
+            }
+        }
+        heights = splice(heights, offset, length, added, newCount);
+        widths = splice(widths, offset, length, added, newCount);
+        layoutWidths = splice(layoutWidths, offset, length, added, newCount);
+        var estimate = getEstimatedHeight();
+        for (int i = offset; i < offset + added; i++) {
+            heights[i] = estimate;
+            widths[i] = 0;
+            layoutWidths[i] = -1;
+        }
+        count = newCount;
+        rebuildTree();
+    }
+
+    /**
+     * Removes and inserts entries in the middle of an array
+     */
+    private static int[] splice(int[] array, int offset, int removed, int added, int newCount) {
+        var result = array.length >= newCount ? array : Arrays.copyOf(array, Math.max(newCount, array.length * 2));
+        var oldCount = newCount - added + removed;
+        System.arraycopy(array, offset + removed, result, offset + added, oldCount - offset - removed);
+        return result;
+    }
+
+    private int getEstimatedHeight() {
+        if (estimatedHeight == 0) {
+            var container = getContainer();
+            if (container == null || container.getFont() == null) {
+                return DEFAULT_HEIGHT;
+            }
+            estimatedHeight = container.getFontMetrics(container.getFont()).getHeight();
+        }
+        return estimatedHeight;
+    }
+
+    private void rebuildTree() {
+        if (tree.length < count + 1) {
+            tree = new int[Math.max(count + 1, tree.length * 2)];
+        } else {
+            Arrays.fill(tree, 0, count + 1, 0);
+        }
+        for (int i = 1; i <= count; i++) {
+            tree[i] += heights[i - 1];
+            var parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void setHeight(int index, int height) {
+        var delta = height - heights[index];
+        heights[index] = height;
+        for (int i = index + 1; i <= count; i += i & -i) {
+            tree[i] += delta;
+        }
+        heightChanged = true;
+    }
+
+    /**
+     * Returns the distance from the top of the view to the top of a paragraph
+     */
+    private int getOffset(int index) {
+        var offset = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            offset += tree[i];
+        }
+        return offset;
+    }
+
+    private int getTotalHeight() {
+        return getOffset(count);
+    }
+
+    /**
+     * Returns the index of the paragraph at a distance from the top of the view, clamped to the paragraphs
+     */
+    private int getIndexAt(int y) {
+        var index = 0;
+        var remaining = y;
+        for (int step = Integer.highestOneBit(Math.max(count, 1)); step > 0; step >>= 1) {
+            var next = index + step;
+            if (next <= count && tree[next] <= remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return Math.max(0, Math.min(index, count - 1));
+    }
+
+    /**
+     * Lays out a paragraph if it changed or was laid out at another width
+     */
+    private void layoutParagraph(int index) {
+        if (layoutWidths[index] >= 0 && layoutWidths[index] == Math.max(width, widths[index])) {
+            return;
+        }
+        var child = getView(index);
+        changed.remove(child);
+        measuring = true;
+        try {
+            var preferredWidth = (int) Math.ceil(child.getPreferredSpan(X_AXIS));
+            var layoutWidth = Math.max(width, preferredWidth);
+            child.setSize(layoutWidth, heights[index]);
+            var height = (int) Math.ceil(child.getPreferredSpan(Y_AXIS));
+            if (height != heights[index]) {
+                child.setSize(layoutWidth, height);
+                setHeight(index, height);
+            }
+            if (preferredWidth != widths[index]) {
+                if (preferredWidth > maxWidth) {
+                    maxWidth = preferredWidth;
+                } else if (widths[index] >= maxWidth) {
+                    maxWidthValid = false;
+                }
+                widths[index] = preferredWidth;
+                widthChanged = true;
+            }
+            layoutWidths[index] = layoutWidth;
+        } finally {
+            measuring = false;
+        }
+    }
+
+    /**
+     * Lays out the paragraphs which changed since they were last laid out
+     */
+    private void layoutChanged() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        for (var child : changed.toArray(new View[0])) {
+            var index = indexOf(child);
+            if (index >= 0) {
+                layoutWidths[index] = -1;
+                layoutParagraph(index);
+            }
+        }
+        changed.clear();
+    }
+
+    private int indexOf(View child) {
+        var index = getViewIndexAtPosition(child.getStartOffset());
+        return index >= 0 && index < count && getView(index) == child ? index : -1;
+    }
+
+    /**
+     * Tells the parent that the preferred size changed after paragraphs were laid out
+     */
+    private void firePreferenceChanged() {
+        if (widthChanged || heightChanged) {
+            var width = widthChanged;
+            var height = heightChanged;
+            widthChanged = false;
+            heightChanged = false;
+            super.preferenceChanged(null, width, height);
+        }
+    }
+
+    @Override
+    public void preferenceChanged(View child, boolean width, boolean height) {
+        if (measuring) {
+            return;
+        }
+        if (child != null) {
+            // a paragraph which was never laid out is laid out when it is used anyway
+            var index = indexOf(child);
+            if (index >= 0 && layoutWidths[index] >= 0) {
+                changed.add(child);
+            }
+        }
+        super.preferenceChanged(child, width, height);
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        layoutChanged();
+        widthChanged = false;
+        heightChanged = false;
+        if (axis == Y_AXIS) {
+            return getTotalHeight();
+        }
+        if (!maxWidthValid) {
+            maxWidth = 0;
+            for (int i = 0; i < count; i++) {
+                maxWidth = Math.max(maxWidth, widths[i]);
+            }
+            maxWidthValid = true;
+        }
+        return maxWidth;
+    }
+
+    @Override
+    public void setSize(float width, float height) {
+        // the paragraphs are laid out again at the new width when they are used
+        this.width = (int) width;
+    }
+
+    @Override
+    public void paint(Graphics g, Shape allocation) {
+        var alloc = allocation instanceof Rectangle ? (Rectangle) allocation : allocation.getBounds();
+        var clip = g.getClipBounds();
+        if (clip == null) {
+            clip = alloc;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // lay out the paragraphs around the painted area first, which may move the ones below
+        var bottom = clip.y + clip.height - alloc.y;
+        for (int i = getIndexAt(clip.y - alloc.y - MARGIN); i < count && getOffset(i) < bottom + MARGIN; i++) {
+            layoutParagraph(i);
+        }
+
+        var rect = new Rectangle();
+        for (int i = getIndexAt(clip.y - alloc.y); i < count; i++) {
+            var y = alloc.y + getOffset(i);
+            if (y >= clip.y + clip.height) {
+                break;
+            }
+            rect.setBounds(alloc.x, y, Math.max(alloc.width, layoutWidths[i]), heights[i]);
+            if (rect.intersects(clip)) {
+                getView(i).paint(g, rect);
+            }
+        }
+        firePreferenceChanged();
+    }
+
+    @Override
+    protected boolean isBefore(int x, int y, Rectangle alloc) {
+        return y < alloc.y;
+    }
+
+    @Override
+    protected boolean isAfter(int x, int y, Rectangle alloc) {
+        return y > alloc.y + getTotalHeight();
+    }
+
+    @Override
+    protected View getViewAtPoint(int x, int y, Rectangle alloc) {
+        if (count == 0) {
+            return null;
+        }
+        var index = getIndexAt(y - alloc.y);
+        childAllocation(index, alloc);
+        return getView(index);
+    }
+
+    @Override
+    public Shape getChildAllocation(int index, Shape a) {
+        return a == null ? null : super.getChildAllocation(index, a);
+    }
+
+    @Override
+    protected void childAllocation(int index, Rectangle a) {
+        layoutParagraph(index);
+        a.y += getOffset(index);
+        a.width = Math.max(a.width, layoutWidths[index]);
+        a.height = heights[index];
+        firePreferenceChanged();
+    }
+}
@@ -0,0 +1,198 @@
+package com.abhyudayasharma.texteditor.editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A set of {@link Editor}s in tabs, one document each.
+ * <p>
+ * Only the {@link #AWAKE_TABS} tabs used last keep their document in memory. The others are hibernated: their
+ * document is written to a compressed scratch file and released, and read back when the tab is selected again.
+ * The attribute sets and fonts of every tab come from the shared {@link AttributePool}, so the styles of the
+ * documents are held once whatever the number of tabs.
+ * <p>
+ * The statistics, the saved file path and the save status of the selected tab are forwarded to the listeners
+ * of the workspace, the other tabs do not update the status bar.
+ */
+public class Workspace extends JPanel {
+    /**
+     * The number of tabs whose document is kept in memory, including the selected one
+     */
+    private static final int AWAKE_TABS = 3;
+
+    private static final String UNTITLED = "Untitled";
+
+    private final JTabbedPane tabs = new JTabbedPane();
+    // the editors from the most recently selected to the least
+    private final ArrayList<Editor> recent = new ArrayList<>();
+    private final ArrayList<Consumer<TextStatistics>> statisticsListeners = new ArrayList<>();
+    private final Consumer<TextStatistics> statisticsForwarder = this::fireStatistics;
+    private final PropertyChangeListener propertyForwarder = e ->
+            firePropertyChange(e.getPropertyName(), e.getOldValue(), e.getNewValue());
+    private Editor selected = null;
+
+    /**
+     * Creates a workspace with one empty tab
+     */
+    public Workspace() {
+        super(new BorderLayout());
+        add(tabs, BorderLayout.CENTER);
+        tabs.addChangeListener(e -> selectionChanged());
+        newTab();
+    }
+
+    /**
+     * Returns the editor of the selected tab
+     *
+     * @return the editor, never hibernating
+     */
+    public Editor getEditor() {
+        return selected;
+    }
+
+    /**
+     * Adds an empty tab and selects it
+     */
+    public void newTab() {
+        var editor = new Editor();
+        editor.addPropertyChangeListener("savedFilePath", e -> updateTitle(editor));
+        tabs.addTab(UNTITLED, editor);
+        tabs.setSelectedComponent(editor);
+    }
+
+    /**
+     * Closes the selected tab after asking, leaving an empty tab if it was the last one
+     */
+    public void closeTab() {
+        var output = JOptionPane.showConfirmDialog(getTopLevelAncestor(),
+                "Do you want to close this tab? You may have unsaved changes.",
+                "Confirm close", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (output != JOptionPane.YES_OPTION) {
+            return;
+        }
+        var editor = selected;
+        if (tabs.getTabCount() == 1) {
+            newTab();
+        }
+        recent.remove(editor);
+        tabs.remove(editor);
+        editor.close();
+    }
+
+    /**
+     * Utility for closing every tab while warning about unsaved changes.
+     *
+     * @return true if ready to quit, false otherwise.
+     */
+    public boolean confirmClose() {
+        var output = JOptionPane.showConfirmDialog(getTopLevelAncestor(),
+                "Do you want to exit? You may have unsaved changes.",
+                "Confirm exit", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (output != JOptionPane.YES_OPTION) {
+            return false;
+        }
+        for (int i = 0; i < tabs.getTabCount(); i++) {
+            ((Editor) tabs.getComponentAt(i)).close();
+        }
+        return true;
+    }
+
+    /**
+     * Registers a listener which receives the word and character counts of the selected tab whenever its text
+     * or its selection changes, or another tab is selected. The listener is called immediately with the current
+     * counts.
+     *
+     * @param listener the listener, called on the Event Dispatch Thread
+     */
+    public void addStatisticsListener(Consumer<TextStatistics> listener) {
+        statisticsListeners.add(listener);
+        // the selected editor calls the forwarder again with the current counts
+        selected.removeStatisticsListener(statisticsForwarder);
+        selected.addStatisticsListener(statisticsForwarder);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addStatisticsListener(Consumer)}
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeStatisticsListener(Consumer<TextStatistics> listener) {
+        statisticsListeners.remove(listener);
+    }
+
+    /**
+     * Returns the path to the file of the selected tab. A "savedFilePath" property change is fired when it
+     * changes, including when another tab is selected.
+     *
+     * @return null if no file has been saved or opened in the tab, the path of the file otherwise
+     */
+    public String getSavedFilePath() {
+        return selected.getSavedFilePath();
+    }
+
+    /**
+     * Returns the state of the last save of the selected tab. A "saveStatus" property change is fired when it
+     * changes, including when another tab is selected.
+     *
+     * @return null if nothing has been saved yet, a short description of the save otherwise
+     */
+    public String getSaveStatus() {
+        return selected.getSaveStatus();
+    }
+
+    private void fireStatistics(TextStatistics statistics) {
+        for (var listener : statisticsListeners) {
+            listener.accept(statistics);
+        }
+    }
+
+    /**
+     * Moves the listeners of the workspace to the newly selected editor, waking it up and hibernating the
+     * editors which have not been used for a while
+     */
+    private void selectionChanged() {
+        var editor = (Editor) tabs.getSelectedComponent();
+        if (editor == selected || editor == null) {
+            return;
+        }
+        var previous = selected;
+        if (previous != null) {
+            previous.removeStatisticsListener(statisticsForwarder);
+            previous.removePropertyChangeListener("savedFilePath", propertyForwarder);
+            previous.removePropertyChangeListener("saveStatus", propertyForwarder);
+        }
+        selected = editor;
+        editor.wake();
+
+        recent.remove(editor);
+        recent.add(0, editor);
+        for (int i = AWAKE_TABS; i < recent.size(); i++) {
+            recent.get(i).hibernate();
+        }
+
+        editor.addStatisticsListener(statisticsForwarder);
+        editor.addPropertyChangeListener("savedFilePath", propertyForwarder);
+        editor.addPropertyChangeListener("saveStatus", propertyForwarder);
+        firePropertyChange("savedFilePath", previous == null ? null : previous.getSavedFilePath(),
+                editor.getSavedFilePath());
+        firePropertyChange("saveStatus", previous == null ? null : previous.getSaveStatus(),
+                editor.getSaveStatus());
+    }
+
+    /**
+     * Names the tab of an editor after its file
+     */
+    private void updateTitle(Editor editor) {
+        var index = tabs.indexOfComponent(editor);
+        if (index < 0) {
+            return;
+        }
+        var path = editor.getSavedFilePath();
+        tabs.setTitleAt(index, path == null ? UNTITLED : new File(path).getName());
+        tabs.setToolTipTextAt(index, path);
+    }
+}